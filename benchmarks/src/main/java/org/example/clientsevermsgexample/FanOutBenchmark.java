@@ -0,0 +1,87 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// One broadcast through ChatHub to every recipient, without sockets: each
+// session just counts the bytes it was handed. Measures the routing and
+// per-recipient cost the engines share, including encoding the line once per
+// wire format.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int recipients;
+
+    @Param({"binary", "legacy"})
+    String format;
+
+    private ChatHub hub;
+    private long counter;
+
+    static final class CountingSession extends ChatSession {
+        long bytes;
+
+        CountingSession(int id, ChatHub hub) {
+            super(id, "127.0.0.1", hub, 16);
+        }
+
+        @Override
+        void sendFrame(Frame frame, ChatSession from) {
+            bytes += frame.size();
+        }
+
+        @Override
+        int getQueueDepth() {
+            return 0;
+        }
+
+        @Override
+        boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        void close() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        hub = new ChatHub((sender, content) -> { }, null, null, new ServerMetrics());
+        for (int i = 0; i < recipients; i++) {
+            CountingSession session = new CountingSession(hub.nextId(), hub);
+            hub.add(session);
+            if (format.equals("binary")) {
+                session.onHello(WireProtocol.VERSION);
+                // Any first frame starts delivery
+                session.onPacket(new WireProtocol.Packet(WireProtocol.PONG, 0, new byte[0]));
+            } else {
+                session.onLegacyDetected();
+            }
+        }
+    }
+
+    @Benchmark
+    public ChatMessage broadcast() {
+        ChatMessage message = new ChatMessage(WireProtocol.SERVER_ID, WireProtocol.SERVER_NAME, "line " + counter++);
+        hub.broadcast(message, null);
+        return message;
+    }
+}
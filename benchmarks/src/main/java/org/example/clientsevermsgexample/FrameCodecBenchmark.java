@@ -0,0 +1,99 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Encoding and decoding one chat line in each wire format: the original
+// DataOutputStream.writeUTF / readUTF pair, the legacy frames the server
+// builds itself, binary TEXT frames, and deflated COMPRESSED frames.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+    @Param({"32", "1024", "16384"})
+    int length;
+
+    private String text;
+    private byte[] writeUtfBytes;
+    private ByteBuffer legacyFrame;
+    private ByteBuffer binaryFrame;
+    private ByteBuffer compressedFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("word").append(i % 100).append(' ');
+        }
+        text = builder.substring(0, length);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF("alice: " + text);
+        writeUtfBytes = bytes.toByteArray();
+        legacyFrame = Frame.of("alice", text).buffer();
+        binaryFrame = WireProtocol.text(7, text).buffer();
+        compressedFrame = WireProtocol.compress(WireProtocol.text(7, text)).buffer();
+    }
+
+    @Benchmark
+    public byte[] writeUtf() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 16);
+        new DataOutputStream(bytes).writeUTF("alice: " + text);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public String readUtf() throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(writeUtfBytes)).readUTF();
+    }
+
+    @Benchmark
+    public Frame legacyEncode() throws IOException {
+        return Frame.of("alice", text);
+    }
+
+    @Benchmark
+    public String legacyDecode() throws IOException {
+        return UtfFrames.decode(legacyFrame.duplicate(), legacyFrame.capacity());
+    }
+
+    @Benchmark
+    public Frame binaryEncode() {
+        return WireProtocol.text(7, text);
+    }
+
+    @Benchmark
+    public String binaryDecode() throws IOException {
+        return WireProtocol.decode(binaryFrame.duplicate()).text();
+    }
+
+    @Benchmark
+    public Frame compressedEncode() {
+        return WireProtocol.compress(WireProtocol.text(7, text));
+    }
+
+    @Benchmark
+    public String compressedDecode() throws IOException {
+        return WireProtocol.decode(compressedFrame.duplicate()).text();
+    }
+}
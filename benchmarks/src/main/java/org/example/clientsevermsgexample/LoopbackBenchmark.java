@@ -0,0 +1,117 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end latency through a real server on loopback, per engine:
+//   relay  one binary client sends a line, another one receives it
+//   ping   a client sends PING and waits for the server's PONG
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    @Param({"BLOCKING", "NIO"})
+    ServerEngine engine;
+
+    private ChatServer server;
+    private Socket sender;
+    private Socket receiver;
+    private OutputStream senderOut;
+    private DataInputStream senderIn;
+    private DataInputStream receiverIn;
+    private final Frame line = WireProtocol.text(0, "the quick brown fox jumps over the lazy dog");
+    private final Frame ping = WireProtocol.control(WireProtocol.PING, 0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new ChatServer(new ServerOptions()
+                .setPort(port)
+                .setEngine(engine)
+                .setJournalDir(null)
+                .setHeartbeat(0, 0));
+        server.start();
+
+        sender = new Socket("localhost", port);
+        receiver = new Socket("localhost", port);
+        senderOut = sender.getOutputStream();
+        senderIn = handshake(sender, "sender");
+        receiverIn = handshake(receiver, "receiver");
+        // Let the roster announcements settle before measuring
+        Thread.sleep(200);
+        drain(senderIn);
+        drain(receiverIn);
+    }
+
+    private static DataInputStream handshake(Socket socket, String name) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        WireProtocol.hello(WireProtocol.VERSION).writeTo(out);
+        WireProtocol.join(0, name).writeTo(out);
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readUnsignedShort();
+        WireProtocol.readHello(in);
+        return in;
+    }
+
+    private static void drain(DataInputStream in) throws IOException {
+        while (in.available() > 0) {
+            WireProtocol.read(in);
+        }
+    }
+
+    @Benchmark
+    public WireProtocol.Packet relay() throws IOException {
+        line.writeTo(senderOut);
+        senderOut.flush();
+        WireProtocol.Packet packet;
+        do {
+            packet = WireProtocol.read(receiverIn);
+        } while (packet.type() != WireProtocol.TEXT);
+        return packet;
+    }
+
+    @Benchmark
+    public WireProtocol.Packet ping() throws IOException {
+        ping.writeTo(senderOut);
+        senderOut.flush();
+        WireProtocol.Packet packet;
+        do {
+            packet = WireProtocol.read(senderIn);
+        } while (packet.type() != WireProtocol.PONG);
+        return packet;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        server.stop();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Client registry join/leave under contention: three threads churn through
+// add and remove while a fourth takes snapshots the way a broadcast does, on
+// a registry that already holds 1000 clients.
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+    private static final int RESIDENT = 1000;
+
+    private ClientRegistry<Object> registry;
+
+    @Setup
+    public void setUp() {
+        registry = new ClientRegistry<>(Object[]::new);
+        for (int i = 0; i < RESIDENT; i++) {
+            registry.add(registry.nextId(), new Object());
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public boolean churn() {
+        int id = registry.nextId();
+        registry.add(id, this);
+        return registry.remove(id);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void snapshot(Blackhole blackhole) {
+        for (Object client : registry.snapshot()) {
+            blackhole.consume(client);
+        }
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public boolean churnAlone() {
+        int id = registry.nextId();
+        registry.add(id, this);
+        return registry.remove(id);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// One TEXT frame from a binary client's read buffer to 100 binary sessions
+// that only count bytes, with nobody watching the server. frame is the NIO
+// engine's path, which copies the frame into a pooled one and never decodes
+// the text; packet decodes it into a Packet and a String first, as the
+// blocking engine does. Run with -prof gc to see the allocation per line.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelayBenchmark {
+    private static final int RECIPIENTS = 100;
+
+    @Param({"32", "1024"})
+    int size;
+
+    private FanOutBenchmark.CountingSession sender;
+    private ByteBuffer input;
+    private int frameSize;
+
+    static final class Unwatched implements ChatHub.Display {
+        @Override
+        public void accept(String sender, String content) {
+        }
+
+        @Override
+        public boolean showsChatLines() {
+            return false;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        ChatHub hub = new ChatHub(new Unwatched(), null, null, new ServerMetrics());
+        for (int i = 0; i <= RECIPIENTS; i++) {
+            FanOutBenchmark.CountingSession session = new FanOutBenchmark.CountingSession(hub.nextId(), hub);
+            hub.add(session);
+            // Version 1, so 1 KB lines aren't deflated for every broadcast
+            session.onHello(1);
+            session.onPacket(new WireProtocol.Packet(WireProtocol.PONG, 0, new byte[0]));
+            sender = session;
+        }
+        Frame frame = WireProtocol.text(0, "x".repeat(size));
+        frameSize = frame.size();
+        input = ByteBuffer.allocateDirect(frameSize);
+        frame.copyTo(input, 0);
+    }
+
+    @Benchmark
+    public boolean frame() throws IOException {
+        return sender.onFrame(input.position(0), frameSize);
+    }
+
+    @Benchmark
+    public boolean packet() throws IOException {
+        return sender.onPacket(WireProtocol.decode(input.position(0)));
+    }
+}
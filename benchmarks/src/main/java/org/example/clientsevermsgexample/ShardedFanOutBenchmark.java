@@ -0,0 +1,114 @@
+package org.example.clientsevermsgexample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Like FanOutBenchmark, but with the sessions spread over real event loops
+// the way the NIO engine pins them. Each operation is one broadcast from a
+// thread outside the loops, complete once every loop has delivered its share,
+// so broadcasts per second should grow with the loops up to the core count.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedFanOutBenchmark {
+    @Param({"1", "2", "4"})
+    int eventLoops;
+
+    @Param({"1000", "10000"})
+    int recipients;
+
+    private EventLoop[] loops;
+    private ChatHub hub;
+    private long counter;
+
+    static final class IdleLoop extends EventLoop {
+        IdleLoop(int index) throws IOException {
+            super(index);
+        }
+
+        @Override
+        void handle(SelectionKey key) {
+        }
+    }
+
+    static final class CountingSession extends ChatSession {
+        long bytes;
+
+        CountingSession(int id, int shard, ChatHub hub) {
+            super(id, "127.0.0.1", shard, hub, 16);
+        }
+
+        @Override
+        void sendFrame(Frame frame, ChatSession from) {
+            bytes += frame.size();
+        }
+
+        @Override
+        int getQueueDepth() {
+            return 0;
+        }
+
+        @Override
+        boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        void close() {
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        loops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            loops[i] = new IdleLoop(i);
+            loops[i].start("bench-loop-" + i);
+        }
+        hub = new ChatHub((sender, content) -> { }, null, null, new ServerMetrics(), loops);
+        for (int i = 0; i < recipients; i++) {
+            CountingSession session = new CountingSession(hub.nextId(), i % eventLoops, hub);
+            hub.add(session);
+            session.onHello(WireProtocol.VERSION);
+            session.onPacket(new WireProtocol.Packet(WireProtocol.PONG, 0, new byte[0]));
+        }
+    }
+
+    @Benchmark
+    public ChatMessage broadcast() throws InterruptedException {
+        ChatMessage message = new ChatMessage(WireProtocol.SERVER_ID, WireProtocol.SERVER_NAME, "line " + counter++);
+        hub.broadcast(message, null);
+        // Each loop runs its tasks in order, so this runs after its share
+        CountDownLatch delivered = new CountDownLatch(loops.length);
+        for (EventLoop loop : loops) {
+            loop.execute(delivered::countDown);
+        }
+        delivered.await();
+        return message;
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (EventLoop loop : loops) {
+            loop.stop();
+        }
+    }
+}
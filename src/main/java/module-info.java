@@ -1,6 +1,8 @@
 module org.example.clientsevermsgexample {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.management;
+    requires jdk.httpserver;
 
 
 
@@ -0,0 +1,141 @@
+package org.example.clientsevermsgexample;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+// Drains an OutboundQueue into a socket stream. Frames that are already queued
+// (or arrive within the linger time) go out together in one flush instead of
+// one unbuffered write per length prefix and body.
+final class BatchingWriter implements Runnable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Queued by closeGracefully(), never written
+    private static final Frame END = Frame.wrap(new byte[0]);
+
+    private final OutputStream out;
+    // The stream's channel, if it has one, for sending file regions
+    private final WritableByteChannel channel;
+    private final OutboundQueue<Frame> queue;
+    private final WriteOptions options;
+    private final Consumer<IOException> onError;
+    // Null when nobody counts what this writer sends
+    private final ServerMetrics metrics;
+    private volatile boolean isActive = true;
+    private volatile Thread writerThread;
+
+    BatchingWriter(OutputStream out, OutboundQueue<Frame> queue, WriteOptions options, Consumer<IOException> onError) {
+        this(out, null, queue, options, null, onError);
+    }
+
+    BatchingWriter(OutputStream out, WritableByteChannel channel, OutboundQueue<Frame> queue, WriteOptions options,
+                   ServerMetrics metrics, Consumer<IOException> onError) {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.channel = channel;
+        this.queue = queue;
+        this.options = options;
+        this.metrics = metrics;
+        this.onError = onError;
+    }
+
+    // Returns false when the queue's overflow policy wants the peer dropped
+    boolean offer(Frame frame) {
+        return isActive && queue.offer(frame);
+    }
+
+    // Never waits, even under BACKPRESSURE; false when the queue is full
+    boolean offerNow(Frame frame) {
+        return isActive && queue.offerNow(frame);
+    }
+
+    int depth() {
+        return queue.depth();
+    }
+
+    @Override
+    public void run() {
+        writerThread = Thread.currentThread();
+        try {
+            while (isActive) {
+                Frame first = queue.take();
+                if (first == END) {
+                    break;
+                }
+                long writeNanos = write(first);
+                long bytes = first.size();
+                int batched = 1;
+
+                long deadline = System.nanoTime() + options.lingerNanos;
+                while (batched < options.maxBatch) {
+                    Frame next;
+                    if (options.lingerNanos > 0) {
+                        next = queue.poll(deadline - System.nanoTime());
+                    } else {
+                        next = queue.poll();
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == END) {
+                        out.flush();
+                        return;
+                    }
+                    writeNanos += write(next);
+                    bytes += next.size();
+                    batched++;
+                }
+                long flushStarted = System.nanoTime();
+                out.flush();
+                if (metrics != null) {
+                    metrics.onWritten(batched, bytes, writeNanos + System.nanoTime() - flushStarted);
+                }
+            }
+        } catch (InterruptedException e) {
+            // close() wakes us up
+        } catch (IOException e) {
+            if (isActive) {
+                isActive = false;
+                onError.accept(e);
+            }
+        }
+    }
+
+    // Returns the time it took, which is mostly socket I/O when the buffer fills up
+    private long write(Frame frame) throws IOException {
+        long started = System.nanoTime();
+        if (!frame.isFileRegion() || channel == null) {
+            frame.writeTo(out);
+            return System.nanoTime() - started;
+        }
+        // Straight from the file to the socket, after what is already buffered
+        out.flush();
+        long offset = 0;
+        while (offset < frame.size()) {
+            offset += frame.transferTo(channel, offset);
+        }
+        return System.nanoTime() - started;
+    }
+
+    // Writes out everything queued so far, then closes
+    void closeGracefully(long timeoutMillis) {
+        Thread writer = writerThread;
+        if (isActive && writer != null && queue.offer(END)) {
+            try {
+                writer.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        close();
+    }
+
+    void close() {
+        isActive = false;
+        queue.close();
+        Thread writer = writerThread;
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.clientsevermsgexample;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// The original engine: an accept loop plus one blocking reader and one
+// writer task per client, all on an executor of platform or virtual threads.
+// Sockets are accepted through a blocking ServerSocketChannel so that history
+// can be sent to them with FileChannel.transferTo.
+class BlockingServerEngine implements ChatEngine {
+    private final ServerOptions options;
+    private final BiConsumer<String, String> display;
+    private final ChatHub clients;
+    // Null when the heartbeat is off
+    private final Reaper reaper;
+
+    private ServerSocketChannel serverChannel;
+    private volatile ExecutorService executor;
+    private volatile boolean isRunning = false;
+
+    BlockingServerEngine(ServerOptions options, Journal journal, Cluster cluster, ServerMetrics metrics,
+                         BiConsumer<String, String> display) {
+        this.options = options;
+        this.display = display;
+        this.clients = new ChatHub(display, journal, cluster, metrics);
+        this.reaper = options.newReaper(display);
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(options.getPort()));
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+        isRunning = true;
+
+        executor = options.getThreadMode().newExecutor("chat-server-" + options.getPort());
+        executor.execute(this::acceptLoop);
+        if (reaper != null) {
+            executor.execute(this::reapLoop);
+        }
+    }
+
+    private void reapLoop() {
+        try {
+            while (isRunning) {
+                TimeUnit.NANOSECONDS.sleep(reaper.advance(System.nanoTime()));
+            }
+        } catch (InterruptedException e) {
+            // stop() shuts the executor down
+        }
+    }
+
+    private void acceptLoop() {
+        int maxClients = options.getMaxClients();
+        while (isRunning) {
+            try {
+                Socket clientSocket = serverChannel.accept().socket();
+                String clientAddress = clientSocket.getInetAddress().getHostAddress();
+
+                if (maxClients > 0 && clients.size() >= maxClients) {
+                    clients.metrics.onRejected();
+                    display.accept("System", "Rejected client " + clientAddress + ": limit of " + maxClients + " reached");
+                    clientSocket.close();
+                    continue;
+                }
+                display.accept("System", "New client connected: " + clientAddress);
+
+                ClientHandler clientHandler = new ClientHandler(clients.nextId(), clientSocket);
+                clients.add(clientHandler);
+                if (reaper != null) {
+                    reaper.track(clientHandler);
+                }
+                executor.execute(clientHandler);
+
+            } catch (IOException e) {
+                if (isRunning) {
+                    display.accept("System", "Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void broadcast(String room, String message) {
+        // Encoded at most once per wire format, every client queues the same bytes
+        clients.broadcastFromServer(room, message);
+    }
+
+    @Override
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public Map<Integer, Integer> getQueueDepths() {
+        return clients.queueDepths();
+    }
+
+    @Override
+    public String describe() {
+        return options.getThreadMode().name().toLowerCase() + " threads";
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+
+        // Close all client connections
+        clients.closeAll();
+
+        // Close server socket
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            display.accept("System", "Error stopping server: " + e.getMessage());
+        }
+
+        // Handlers are already unblocked by their closed sockets, this just
+        // makes sure no thread outlives the server
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Inner class to handle each client connection
+    private class ClientHandler extends ChatSession implements Runnable {
+        private Socket socket;
+        private DataInputStream inputStream;
+        private BatchingWriter writer;
+        private volatile boolean isActive = true;
+
+        public ClientHandler(int id, Socket socket) {
+            super(id, socket.getInetAddress().getHostAddress(), clients, options.getQueueCapacity());
+            this.socket = socket;
+
+            try {
+                socket.setTcpNoDelay(options.getWriteOptions().tcpNoDelay);
+                // The only way to notice a vanished legacy client, they can't answer pings
+                socket.setKeepAlive(true);
+                inputStream = new DataInputStream(clients.metrics.meter(socket.getInputStream()));
+                writer = new BatchingWriter(socket.getOutputStream(), socket.getChannel(),
+                        new OutboundQueue<>(options.getQueueCapacity(), options.getOverflowPolicy()), options.getWriteOptions(),
+                        clients.metrics, e -> {
+                            display.accept("System", "Error sending message to client: " + e.getMessage());
+                            close();
+                        });
+            } catch (IOException e) {
+                display.accept("System", "Error setting up client handler: " + e.getMessage());
+                isActive = false;
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isActive) {
+                executor.execute(writer);
+            }
+
+            try {
+                if (isActive) {
+                    int firstLength = negotiate();
+                    if (isBinary()) {
+                        readBinary();
+                    } else {
+                        readLegacy(firstLength);
+                    }
+                }
+            } catch (IOException e) {
+                if (isActive) {
+                    display.accept("System", "Lost connection to client " + clientAddress + ": " + e.getMessage());
+                }
+            } finally {
+                close();
+                clients.remove(this);
+            }
+        }
+
+        // Binary clients open with HELLO; anything else, or silence for the
+        // hello timeout, means a legacy client. Returns the length of the first
+        // legacy frame when one has already been read, otherwise -1.
+        private int negotiate() throws IOException {
+            socket.setSoTimeout(options.getHelloTimeoutMillis());
+            try {
+                int firstLength = inputStream.readUnsignedShort();
+                if (firstLength == 0) {
+                    onHello(WireProtocol.readHello(inputStream));
+                    return -1;
+                }
+                onLegacyDetected();
+                return firstLength;
+            } catch (SocketTimeoutException e) {
+                onLegacyDetected();
+                return -1;
+            } finally {
+                socket.setSoTimeout(0);
+            }
+        }
+
+        private void readBinary() throws IOException {
+            while (isActive) {
+                if (!onPacket(WireProtocol.read(inputStream))) {
+                    break;
+                }
+            }
+        }
+
+        private void readLegacy(int firstLength) throws IOException {
+            Frame frame = firstLength >= 0 ? Frame.readBody(inputStream, firstLength) : null;
+            while (isActive) {
+                if (frame == null) {
+                    frame = Frame.read(inputStream);
+                }
+                if (!onLegacyMessage(frame)) {
+                    break;
+                }
+                frame = null;
+            }
+        }
+
+        // Only queues the frame, the writer task does the socket I/O
+        @Override
+        void sendFrame(Frame frame, ChatSession from) {
+            if (!isActive) {
+                return;
+            }
+            if (!writer.offer(frame)) {
+                display.accept("System", "Client " + clientAddress + " is not keeping up, disconnecting");
+                close();
+            }
+        }
+
+        // Pings from the reaper and pongs from the reader thread never wait:
+        // a client whose queue is full isn't reading, and a reaper blocked on
+        // one would stop reaping everybody else
+        @Override
+        void sendControl(Frame frame) {
+            if (!isActive || !isNegotiated() || !isBinary()) {
+                return;
+            }
+            if (!writer.offerNow(frame)) {
+                display.accept("System", "Client " + clientAddress + " is not keeping up, disconnecting");
+                close();
+            }
+        }
+
+        @Override
+        int getQueueDepth() {
+            return writer != null ? writer.depth() : 0;
+        }
+
+        @Override
+        boolean isOpen() {
+            return isActive;
+        }
+
+        @Override
+        public void close() {
+            isActive = false;
+            if (writer != null) {
+                writer.close();
+            }
+
+            try {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+
+                if (socket != null && !socket.isClosed()) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                display.accept("System", "Error closing client connection: " + e.getMessage());
+            }
+        }
+    }
+}
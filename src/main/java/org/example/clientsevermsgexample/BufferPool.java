@@ -0,0 +1,129 @@
+package org.example.clientsevermsgexample;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Direct buffers for socket reads and relayed frames, recycled instead of
+// being left to the garbage collector and the Cleaner. Sizes are rounded up
+// to a power of two from 64 bytes to 128 KB, and the small ones are carved
+// out of 128 KB slabs. Every thread keeps a few buffers of each size to
+// itself and shares the rest through a bounded stack, so a buffer filled on
+// one event loop and freed on another makes its way back. Bigger buffers are
+// allocated as needed and never pooled.
+//
+// chat.bufferPool.maxBytes: idle memory the shared stacks may hold, 64 MB by default
+final class BufferPool {
+    static final int MIN_SIZE = 64;
+    static final int MAX_SIZE = 128 * 1024;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final int LOCAL_LIMIT = 64;
+    private static final long MAX_SHARED_BYTES = Long.getLong("chat.bufferPool.maxBytes", 64L * 1024 * 1024);
+
+    private static final SharedStack[] shared = new SharedStack[CLASSES];
+    private static final ThreadLocal<ArrayDeque<ByteBuffer>[]> local = ThreadLocal.withInitial(BufferPool::newLocal);
+
+    static {
+        for (int i = 0; i < CLASSES; i++) {
+            int size = MIN_SIZE << i;
+            shared[i] = new SharedStack((int) Math.max(LOCAL_LIMIT, MAX_SHARED_BYTES / CLASSES / size));
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    // A cleared buffer of at least size bytes; hand it back with release()
+    static ByteBuffer allocate(int size) {
+        if (size > MAX_SIZE) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = local.get()[sizeClass].poll();
+        if (buffer == null) {
+            buffer = shared[sizeClass].pop();
+        }
+        if (buffer == null) {
+            buffer = carve(sizeClass);
+        }
+        return buffer.clear();
+    }
+
+    // The buffer must not be used afterwards. Buffers that didn't come from
+    // allocate() are left alone.
+    static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || capacity < MIN_SIZE || capacity > MAX_SIZE
+                || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int sizeClass = sizeClass(capacity);
+        ArrayDeque<ByteBuffer> cache = local.get()[sizeClass];
+        if (cache.size() < LOCAL_LIMIT) {
+            cache.push(buffer);
+        } else {
+            shared[sizeClass].push(buffer);
+        }
+    }
+
+    private static int sizeClass(int size) {
+        return Math.max(0, 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT);
+    }
+
+    // Slices a new slab into buffers of one size, keeps the spares
+    private static ByteBuffer carve(int sizeClass) {
+        int size = MIN_SIZE << sizeClass;
+        ByteBuffer slab = ByteBuffer.allocateDirect(MAX_SIZE);
+        ArrayDeque<ByteBuffer> cache = local.get()[sizeClass];
+        for (int offset = size; offset < MAX_SIZE; offset += size) {
+            ByteBuffer spare = slab.slice(offset, size);
+            if (cache.size() < LOCAL_LIMIT) {
+                cache.push(spare);
+            } else {
+                shared[sizeClass].push(spare);
+            }
+        }
+        return slab.slice(0, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ByteBuffer>[] newLocal() {
+        ArrayDeque<ByteBuffer>[] caches = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            caches[i] = new ArrayDeque<>(LOCAL_LIMIT);
+        }
+        return caches;
+    }
+
+    // Grows up to its limit, then drops what doesn't fit
+    private static final class SharedStack {
+        private final int limit;
+        private ByteBuffer[] buffers = new ByteBuffer[LOCAL_LIMIT];
+        private int size = 0;
+
+        SharedStack(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void push(ByteBuffer buffer) {
+            if (size == buffers.length) {
+                if (size >= limit) {
+                    return;
+                }
+                ByteBuffer[] bigger = new ByteBuffer[Math.min(limit, size * 2)];
+                System.arraycopy(buffers, 0, bigger, 0, size);
+                buffers = bigger;
+            }
+            buffers[size++] = buffer;
+        }
+
+        synchronized ByteBuffer pop() {
+            if (size == 0) {
+                return null;
+            }
+            ByteBuffer buffer = buffers[--size];
+            buffers[size] = null;
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.util.Map;
+
+// The socket handling strategy behind a ChatServer.
+interface ChatEngine {
+    void start() throws IOException;
+
+    void stop();
+
+    // Safe to call from any thread. To one room, or to every client when room is null
+    void broadcast(String room, String message);
+
+    int getClientCount();
+
+    Map<Integer, Integer> getQueueDepths();
+
+    // Shown in the "Server started" line
+    String describe();
+}
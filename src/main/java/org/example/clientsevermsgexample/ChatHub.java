@@ -0,0 +1,394 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+// The set of connected sessions plus the fan-out rules both server engines
+// share: chat lines go to everyone but the sender in whatever format each
+// session negotiated, and join/leave announcements only go to binary sessions.
+//
+// Chat lines are routed by room. Every session starts in the lobby, which is
+// all legacy clients ever see; other rooms exist while they have subscribers.
+// A line costs O(subscribers of its room), and joining or leaving a room is
+// an O(1) registry update.
+//
+// With event loops, members are kept per loop and a line is handed to each
+// other loop once, as a task that delivers it to that loop's members, so
+// sessions are only ever sent to from their own loop.
+//
+// With a Cluster, lines that start here are also relayed to the peer servers,
+// which connect like binary clients and are then kept apart from the chat.
+// Senders on other nodes get a local id the first time they are heard from.
+final class ChatHub {
+    private static final int MAX_QUERY_PAGE = 500;
+    private static final int MAX_ROOM_NAME = 64;
+    private static final int MAX_RESUME_LINES = 10_000;
+
+    // A display that can tell when nobody is looking, so chat lines relayed
+    // from frames are never decoded just to be thrown away
+    interface Display extends BiConsumer<String, String> {
+        boolean showsChatLines();
+    }
+
+    private final ClientRegistry<ChatSession> sessions = new ClientRegistry<>(ChatSession[]::new);
+    // The same sessions by loop, for lines to everyone
+    private final ShardedRegistry everyone;
+    private final ShardedRegistry lobby;
+    private final ConcurrentHashMap<String, ShardedRegistry> rooms = new ConcurrentHashMap<>();
+    // Sessions of peer servers, which only ever send RELAY frames
+    private final ClientRegistry<ChatSession> peers = new ClientRegistry<>(ChatSession[]::new);
+    // Local id of each sender heard from on another node
+    private final ConcurrentHashMap<String, Integer> remoteSenders = new ConcurrentHashMap<>();
+    private final SenderTable names = new SenderTable();
+    private final BiConsumer<String, String> display;
+    // Null when the server keeps no journal
+    private final Journal journal;
+    // Null when the server is not part of a cluster
+    private final Cluster cluster;
+    final ServerMetrics metrics;
+    // Indexed by ChatSession.shard; empty when sessions take sends from any thread
+    private final EventLoop[] loops;
+
+    ChatHub(BiConsumer<String, String> display, Journal journal, Cluster cluster, ServerMetrics metrics) {
+        this(display, journal, cluster, metrics, new EventLoop[0]);
+    }
+
+    ChatHub(BiConsumer<String, String> display, Journal journal, Cluster cluster, ServerMetrics metrics,
+            EventLoop[] loops) {
+        this.display = display;
+        this.journal = journal;
+        this.cluster = cluster;
+        this.metrics = metrics;
+        this.loops = loops;
+        this.everyone = new ShardedRegistry(Math.max(1, loops.length));
+        this.lobby = new ShardedRegistry(Math.max(1, loops.length));
+    }
+
+    int nextId() {
+        return sessions.nextId();
+    }
+
+    void add(ChatSession session) {
+        sessions.add(session.id, session);
+        everyone.add(session);
+        lobby.add(session);
+        metrics.onAccepted();
+    }
+
+    void remove(ChatSession session) {
+        if (peers.remove(session.id)) {
+            metrics.onClosed();
+            display.accept("System", "Peer server " + session.clientAddress + " disconnected");
+            return;
+        }
+        everyone.remove(session);
+        lobby.remove(session);
+        for (String room : session.rooms) {
+            unsubscribe(session, room);
+        }
+        if (sessions.remove(session.id)) {
+            metrics.onClosed();
+            if (names.remove(session.id) != null) {
+                announce(WireProtocol.control(WireProtocol.LEAVE, session.id), session);
+            }
+        }
+    }
+
+    // Takes a session that introduced itself as another server out of the chat
+    void addPeer(ChatSession session, long nodeId) {
+        if (!sessions.remove(session.id)) {
+            return;
+        }
+        everyone.remove(session);
+        lobby.remove(session);
+        for (String room : session.rooms) {
+            unsubscribe(session, room);
+        }
+        names.remove(session.id);
+        peers.add(session.id, session);
+        display.accept("System", "Peer server " + session.clientAddress + " linked as node " + Long.toHexString(nodeId)
+                + (cluster != null ? "" : ", but this server has no chat.cluster.peers and ignores it"));
+    }
+
+    // Null for the lobby
+    String roomKey(String room) {
+        String name = room.strip();
+        return name.isEmpty() || name.equalsIgnoreCase(WireProtocol.LOBBY) ? null : name;
+    }
+
+    void subscribe(ChatSession session, String room) {
+        String key = roomKey(room);
+        if (key == null) {
+            lobby.add(session);
+        } else if (key.length() <= MAX_ROOM_NAME && session.rooms.add(key)) {
+            // compute() keeps this atomic with an unsubscribe dropping the room
+            rooms.compute(key, (name, members) -> {
+                if (members == null) {
+                    members = new ShardedRegistry(lobby.shards());
+                }
+                members.add(session);
+                return members;
+            });
+        }
+    }
+
+    void unsubscribe(ChatSession session, String room) {
+        String key = roomKey(room);
+        if (key == null) {
+            lobby.remove(session);
+        } else if (session.rooms.remove(key)) {
+            rooms.computeIfPresent(key, (name, members) -> {
+                members.remove(session);
+                return members.size() == 0 ? null : members;
+            });
+        }
+    }
+
+    // Maps the session's id to its (interned) name and announces it to binary
+    // sessions. Returns the interned name.
+    String rename(ChatSession session, String name) {
+        String interned = names.put(session.id, name);
+        announce(WireProtocol.join(session.id, interned), null);
+        return interned;
+    }
+
+    String nameOf(int id) {
+        return names.get(id);
+    }
+
+    ChatSession[] snapshot() {
+        return sessions.snapshot();
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    void display(String sender, String content) {
+        display.accept(sender, content);
+    }
+
+    // A chat line under its sender and room
+    void display(ChatMessage message) {
+        if (!(display instanceof Display lines) || lines.showsChatLines()) {
+            display.accept(message.room != null ? message.sender + " #" + message.room : message.sender, message.text());
+        }
+    }
+
+    // To the message's room here and on every peer
+    void broadcast(ChatMessage message, ChatSession from) {
+        route(message, from);
+        if (cluster != null) {
+            cluster.publish(message, false);
+        }
+    }
+
+    private void route(ChatMessage message, ChatSession from) {
+        ShardedRegistry members = message.room == null ? lobby : rooms.get(message.room);
+        if (members != null) {
+            fanOut(message, members, from);
+        }
+    }
+
+    private void fanOut(ChatMessage message, ShardedRegistry members, ChatSession from) {
+        // Only lobby lines are journaled, replay and search are open to everyone
+        if (journal != null && message.room == null) {
+            try {
+                message.sequence = journal.append(message);
+            } catch (IOException e) {
+                display.accept("System", "Error writing to the journal: " + e.getMessage());
+            }
+        }
+        if (loops.length == 0) {
+            deliver(message, members.snapshot(0), from);
+            return;
+        }
+        // Other loops first, so they work while this thread does its share
+        int current = currentShard();
+        for (int shard = 0; shard < loops.length; shard++) {
+            ChatSession[] recipients = members.snapshot(shard);
+            if (shard != current && recipients.length > 0) {
+                message.retain();
+                loops[shard].execute(() -> {
+                    try {
+                        deliver(message, recipients, from);
+                    } finally {
+                        message.release();
+                    }
+                });
+            }
+        }
+        if (current != -1) {
+            deliver(message, members.snapshot(current), from);
+        }
+    }
+
+    // Timed per loop, each loop's share is what it has to get through
+    private void deliver(ChatMessage message, ChatSession[] recipients, ChatSession from) {
+        long started = System.nanoTime();
+        for (ChatSession session : recipients) {
+            if (session != from) {
+                session.send(message, from);
+            }
+        }
+        metrics.onFanOut(System.nanoTime() - started);
+    }
+
+    // -1 when not called on one of the loops
+    private int currentShard() {
+        for (EventLoop loop : loops) {
+            if (loop.inLoop()) {
+                return loop.index;
+            }
+        }
+        return -1;
+    }
+
+    // To one room, or to every session in every room when room is null
+    void broadcastFromServer(String room, String text) {
+        ChatMessage message = new ChatMessage(WireProtocol.SERVER_ID, WireProtocol.SERVER_NAME, text,
+                room != null ? roomKey(room) : null);
+        if (room == null) {
+            fanOut(message, everyone, null);
+        } else {
+            route(message, null);
+        }
+        if (cluster != null) {
+            cluster.publish(message, room == null);
+        }
+    }
+
+    // Delivers a line relayed by a peer server to local clients only
+    void relayFromPeer(WireProtocol.Relay relay) {
+        if (cluster == null || !cluster.firstSeen(relay.origin(), relay.sequence())) {
+            return;
+        }
+        String room = relay.room() != null ? roomKey(relay.room()) : null;
+        boolean fromServer = relay.sender().equals(WireProtocol.SERVER_NAME);
+        int senderId = fromServer ? WireProtocol.SERVER_ID : remoteSenderId(relay.sender());
+        ChatMessage message = new ChatMessage(senderId, fromServer ? WireProtocol.SERVER_NAME : names.get(senderId),
+                relay.text(), room);
+        display(message);
+        if (relay.everyone()) {
+            fanOut(message, everyone, null);
+        } else {
+            route(message, null);
+        }
+    }
+
+    private int remoteSenderId(String name) {
+        Integer id = remoteSenders.get(name);
+        return id != null ? id : addRemoteSender(name);
+    }
+
+    private synchronized int addRemoteSender(String name) {
+        Integer id = remoteSenders.get(name);
+        if (id != null) {
+            return id;
+        }
+        int newId = sessions.nextId();
+        // Named before it is published, so nobody sees the id without the name
+        String interned = names.put(newId, name);
+        remoteSenders.put(interned, newId);
+        announce(WireProtocol.join(newId, interned), null);
+        return newId;
+    }
+
+    // Sends a newly negotiated session the journaled lines from before it
+    // connected. Returns the sequence number of the last one.
+    long replayTo(ChatSession to) {
+        if (journal == null) {
+            return 0;
+        }
+        return send(journal.replay(to.isBinary()), to);
+    }
+
+    // Sends a reconnecting binary session the journaled lines after the last
+    // one it saw. Returns the sequence number of the last one sent.
+    long resumeTo(ChatSession to, long after) {
+        if (journal == null) {
+            return 0;
+        }
+        return send(journal.since(after, MAX_RESUME_LINES), to);
+    }
+
+    // Answers a BACKLOG request for the last messages lines, 0 meaning all that are kept
+    void sendBacklog(ChatSession to, int messages) {
+        if (journal != null) {
+            send(journal.backlog(messages, 0, to.isBinary()), to);
+        }
+    }
+
+    // Answers a QUERY with one page of HISTORY frames and a QUERY_DONE
+    void sendQueryResults(ChatSession to, WireProtocol.Query query) {
+        long nextCursor = 0;
+        if (journal != null) {
+            int limit = query.limit() > 0 ? Math.min(query.limit(), MAX_QUERY_PAGE) : MAX_QUERY_PAGE;
+            Journal.QueryResult result = journal.query(query.from(), query.to(), query.sender(), query.after(), limit);
+            for (Frame region : result.frames()) {
+                to.sendFrame(region, null);
+            }
+            nextCursor = result.nextCursor();
+        }
+        to.sendControl(WireProtocol.queryDone(nextCursor));
+    }
+
+    // HISTORY frames carry no sequence numbers, binary sessions get the
+    // last one after them
+    private static long send(Journal.Backlog backlog, ChatSession to) {
+        for (Frame region : backlog.frames()) {
+            to.sendFrame(region, null);
+        }
+        if (backlog.lastSequence() != 0) {
+            to.sendControl(WireProtocol.sequence(backlog.lastSequence()));
+        }
+        return backlog.lastSequence();
+    }
+
+    // Sends a newly joined binary session the names of everyone already here
+    void sendRoster(ChatSession to) {
+        for (ChatSession session : sessions.snapshot()) {
+            String name = session.name();
+            if (session != to && name != null) {
+                to.sendControl(WireProtocol.join(session.id, name));
+            }
+        }
+        for (Map.Entry<String, Integer> remote : remoteSenders.entrySet()) {
+            to.sendControl(WireProtocol.join(remote.getValue(), remote.getKey()));
+        }
+    }
+
+    private void announce(Frame frame, ChatSession except) {
+        for (ChatSession session : sessions.snapshot()) {
+            if (session != except) {
+                session.sendControl(frame);
+            }
+        }
+    }
+
+    // Outbound queue depth per client id
+    Map<Integer, Integer> queueDepths() {
+        Map<Integer, Integer> depths = new TreeMap<>();
+        for (ChatSession session : sessions.snapshot()) {
+            depths.put(session.id, session.getQueueDepth());
+        }
+        return depths;
+    }
+
+    void closeAll() {
+        for (ChatSession session : sessions.snapshot()) {
+            session.close();
+        }
+        for (ChatSession peer : peers.snapshot()) {
+            peer.close();
+        }
+        sessions.clear();
+        peers.clear();
+        everyone.clear();
+        lobby.clear();
+        rooms.clear();
+    }
+}
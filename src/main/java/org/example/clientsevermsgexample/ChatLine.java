@@ -0,0 +1,5 @@
+package org.example.clientsevermsgexample;
+
+// One row of a chat window transcript.
+record ChatLine(String sender, String content, boolean isOwn) {
+}
@@ -0,0 +1,52 @@
+package org.example.clientsevermsgexample;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+// Renders a ChatLine as the same sender label plus message bubble the views
+// used to build per message. The node tree is created once per visible cell
+// and only its text and style change as the cell is reused.
+final class ChatLineCell extends ListCell<ChatLine> {
+    private static final String OWN_STYLE = "-fx-background-color: #90EE90; -fx-background-radius: 10px;";
+    private static final String OTHER_STYLE = "-fx-background-color: #F0F0F0; -fx-background-radius: 10px;";
+
+    private final HBox hBox = new HBox();
+    private final Text senderText = new Text();
+    private final Text messageText = new Text();
+    private final TextFlow messageTextFlow = new TextFlow(messageText);
+
+    ChatLineCell() {
+        hBox.setPadding(new Insets(5, 10, 5, 10));
+        messageTextFlow.setPadding(new Insets(5));
+        hBox.getChildren().addAll(new TextFlow(senderText), messageTextFlow);
+
+        // Let the list's width decide the layout instead of the text length
+        setPrefWidth(0);
+        setStyle("-fx-background-color: transparent;");
+    }
+
+    @Override
+    protected void updateItem(ChatLine line, boolean empty) {
+        super.updateItem(line, empty);
+
+        if (empty || line == null) {
+            setGraphic(null);
+            return;
+        }
+
+        senderText.setText(line.sender() + ": ");
+        messageText.setText(line.content());
+        if (line.isOwn()) {
+            hBox.setAlignment(Pos.CENTER_RIGHT);
+            messageTextFlow.setStyle(OWN_STYLE);
+        } else {
+            hBox.setAlignment(Pos.CENTER_LEFT);
+            messageTextFlow.setStyle(OTHER_STYLE);
+        }
+        setGraphic(hBox);
+    }
+}
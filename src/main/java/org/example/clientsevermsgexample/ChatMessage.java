@@ -0,0 +1,181 @@
+package org.example.clientsevermsgexample;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// A chat line on its way through the server. Each wire format is encoded at
+// most once, the first time a recipient speaking it asks, and then shared.
+// The same goes for the compressed binary frame. Binary frames of journaled
+// lines carry a SEQUENCE frame so clients can resume after a reconnect.
+//
+// A line relayed from a binary client's frame keeps its text as the UTF-8
+// bytes at the end of that frame, and only decodes it when something needs
+// the characters. Its frames are pooled: whoever keeps the message past the
+// call that handed it over retains it, and the frames are released with the
+// message's last release.
+final class ChatMessage {
+    private static final AtomicIntegerFieldUpdater<ChatMessage> REFS =
+            AtomicIntegerFieldUpdater.newUpdater(ChatMessage.class, "refs");
+
+    final int senderId;
+    final String sender;
+    // Null for the lobby
+    final String room;
+    // Position in the journal, 0 if it wasn't journaled
+    long sequence = 0;
+
+    // Null until somebody needs the characters, for lines relayed from a frame
+    private String text;
+    private byte[] senderBytes;
+    private byte[] textBytes;
+    // How many bytes of text end plainFrame, -1 when the line started out as a String
+    private final int textLength;
+    private volatile int refs = 1;
+
+    private Frame legacyFrame;
+    // The binary frame without its SEQUENCE frame
+    private Frame plainFrame;
+    private Frame binaryFrame;
+    private Frame compressedFrame;
+    private boolean legacyTooLong = false;
+
+    ChatMessage(int senderId, String sender, String text) {
+        this(senderId, sender, text, (String) null);
+    }
+
+    ChatMessage(int senderId, String sender, String text, String room) {
+        this.senderId = senderId;
+        this.sender = sender;
+        this.text = text;
+        this.room = room;
+        this.textLength = -1;
+    }
+
+    // For a message received from a legacy client, whose bytes can be reused as-is
+    ChatMessage(int senderId, String sender, String text, Frame legacyFrame) {
+        this(senderId, sender, text);
+        this.legacyFrame = legacyFrame;
+    }
+
+    // For a line relayed from a binary client, its text the last textLength
+    // bytes of plainFrame, e.g. from WireProtocol.chatLine()
+    ChatMessage(int senderId, String sender, byte[] senderBytes, String room, Frame plainFrame, int textLength) {
+        this.senderId = senderId;
+        this.sender = sender;
+        this.senderBytes = senderBytes;
+        this.room = room;
+        this.plainFrame = plainFrame;
+        this.textLength = textLength;
+    }
+
+    synchronized String text() {
+        if (text == null) {
+            text = plainFrame.utf8(plainFrame.size() - textLength, textLength);
+        }
+        return text;
+    }
+
+    synchronized byte[] senderBytes() {
+        if (senderBytes == null) {
+            senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        }
+        return senderBytes;
+    }
+
+    // Length of the text in UTF-8
+    int textSize() {
+        return textLength != -1 ? textLength : utf8Text().length;
+    }
+
+    // Copies the text as UTF-8 into target at index, leaving its position alone
+    void copyText(ByteBuffer target, int index) {
+        if (textLength != -1) {
+            plainFrame.copyTo(target, index, plainFrame.size() - textLength, textLength);
+        } else {
+            target.put(index, utf8Text());
+        }
+    }
+
+    private synchronized byte[] utf8Text() {
+        if (textBytes == null) {
+            textBytes = text.getBytes(StandardCharsets.UTF_8);
+        }
+        return textBytes;
+    }
+
+    ChatMessage retain() {
+        REFS.incrementAndGet(this);
+        return this;
+    }
+
+    // Nothing may ask for the message's text or frames after its last release
+    void release() {
+        if (REFS.decrementAndGet(this) == 0) {
+            releaseFrames();
+        }
+    }
+
+    private synchronized void releaseFrames() {
+        if (legacyFrame != null) {
+            legacyFrame.release();
+        }
+        if (plainFrame != null) {
+            plainFrame.release();
+        }
+        if (binaryFrame != null && binaryFrame != plainFrame) {
+            binaryFrame.release();
+        }
+        if (compressedFrame != null && compressedFrame != plainFrame && compressedFrame != binaryFrame) {
+            compressedFrame.release();
+        }
+        legacyFrame = null;
+        plainFrame = null;
+        binaryFrame = null;
+        compressedFrame = null;
+    }
+
+    // Null if the text doesn't fit writeUTF's 64 KB limit
+    synchronized Frame legacyFrame() {
+        if (legacyFrame == null && !legacyTooLong) {
+            if (textLength != -1) {
+                // Straight from the bytes when the two encodings agree
+                legacyFrame = UtfFrames.fromUtf8(sender, senderBytes(), plainFrame,
+                        plainFrame.size() - textLength, textLength);
+            }
+            if (legacyFrame == null) {
+                try {
+                    legacyFrame = Frame.of(sender, text());
+                } catch (UTFDataFormatException e) {
+                    legacyTooLong = true;
+                }
+            }
+        }
+        return legacyFrame;
+    }
+
+    synchronized Frame binaryFrame() {
+        if (binaryFrame == null) {
+            binaryFrame = WireProtocol.withSequence(plainFrame(), sequence);
+        }
+        return binaryFrame;
+    }
+
+    private synchronized Frame plainFrame() {
+        if (plainFrame == null) {
+            plainFrame = room == null ? WireProtocol.text(senderId, text) : WireProtocol.roomText(senderId, room, text);
+        }
+        return plainFrame;
+    }
+
+    // For sessions that negotiated compression, the same as binaryFrame()
+    // when the frame is too small to bother
+    synchronized Frame compressedFrame() {
+        if (compressedFrame == null) {
+            Frame compressed = WireProtocol.compress(plainFrame());
+            compressedFrame = compressed == plainFrame ? binaryFrame() : WireProtocol.withSequence(compressed, sequence);
+        }
+        return compressedFrame;
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+// The chat server without any UI. ServerView drives one of these and shows
+// what its listeners report; main() runs one as a standalone daemon:
+//
+//   java -cp target/classes -Dchat.server.engine=nio org.example.clientsevermsgexample.ChatServer 6666
+//
+// Several of them form a cluster when each lists the others. Started from
+// the same directory they still keep separate journals, chat-journal-<port>
+// unless chat.journal.dir says otherwise:
+//
+//   ... -Dchat.cluster.peers=localhost:6667,localhost:6668 ...ChatServer 6666
+//   ... -Dchat.cluster.peers=localhost:6666,localhost:6668 ...ChatServer 6667
+//   ... -Dchat.cluster.peers=localhost:6666,localhost:6667 ...ChatServer 6668
+public class ChatServer {
+    private final ServerOptions options;
+    private final List<ChatServerListener> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile ChatEngine engine;
+    private volatile Journal journal;
+    private volatile Cluster cluster;
+    private volatile MetricsEndpoint metricsEndpoint;
+    // Kept across restarts, like a process's own counters
+    private final ServerMetrics metrics = new ServerMetrics();
+    // Handed to the engines, which skip decoding chat lines nobody listens to
+    private final ChatHub.Display display = new ChatHub.Display() {
+        @Override
+        public void accept(String sender, String content) {
+            publish(sender, content);
+        }
+
+        @Override
+        public boolean showsChatLines() {
+            return !listeners.isEmpty();
+        }
+    };
+
+    public ChatServer(ServerOptions options) {
+        this.options = options;
+    }
+
+    public void addListener(ChatServerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChatServerListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void publish(String sender, String content) {
+        for (ChatServerListener listener : listeners) {
+            listener.onMessage(sender, content);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (engine != null) {
+            throw new IllegalStateException("Server already started");
+        }
+
+        JournalOptions journalOptions = options.getJournalOptions();
+        Journal newJournal = journalOptions.dir != null ? Journal.open(journalOptions) : null;
+        Cluster newCluster = options.newCluster(this::publish);
+        ChatEngine newEngine;
+        try {
+            newEngine = options.getEngine() == ServerEngine.NIO
+                    ? new NioServerEngine(options, newJournal, newCluster, metrics, display)
+                    : new BlockingServerEngine(options, newJournal, newCluster, metrics, display);
+            newEngine.start();
+        } catch (IOException e) {
+            if (newJournal != null) {
+                newJournal.close();
+            }
+            throw e;
+        }
+        engine = newEngine;
+        journal = newJournal;
+        cluster = newCluster;
+        publish("System", "Server started on port " + options.getPort() + " (" + engine.describe() + ")");
+        metricsEndpoint = MetricsEndpoint.start(this, metrics, options, this::publish);
+        if (newCluster != null) {
+            newCluster.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (engine == null) {
+            return;
+        }
+        if (cluster != null) {
+            cluster.stop();
+            cluster = null;
+        }
+        metricsEndpoint.stop();
+        metricsEndpoint = null;
+        engine.stop();
+        engine = null;
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        publish("System", "Server stopped");
+        stopped.countDown();
+    }
+
+    // Sends a message to every client as coming from "Server"
+    public void broadcast(String message) {
+        broadcast(null, message);
+    }
+
+    // Sends a message to the subscribers of one room, or to everyone when room is null
+    public void broadcast(String room, String message) {
+        ChatEngine current = engine;
+        if (current != null) {
+            current.broadcast(room, message);
+        }
+    }
+
+    public int getClientCount() {
+        ChatEngine current = engine;
+        return current != null ? current.getClientCount() : 0;
+    }
+
+    // Outbound queue depth per client id
+    public Map<Integer, Integer> getQueueDepths() {
+        ChatEngine current = engine;
+        return current != null ? current.getQueueDepths() : Map.of();
+    }
+
+    // Copies every journaled line to file as WireProtocol HISTORY frames,
+    // straight from the journal files. Returns the number of bytes written.
+    public long exportTranscript(Path file) throws IOException {
+        Journal current = journal;
+        if (current == null) {
+            throw new IllegalStateException("Server is not running with a journal");
+        }
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return current.exportTo(out);
+        }
+    }
+
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    public static void main(String[] args) throws Exception {
+        ServerOptions options = new ServerOptions();
+        if (args.length > 0) {
+            options.setPort(Integer.parseInt(args[0]));
+        }
+
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+        ChatServer server = new ChatServer(options);
+        server.addListener((sender, content) -> {
+            System.out.println(LocalTime.now().format(timeFormat) + " " + sender + ": " + content);
+        });
+
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "chat-server-shutdown"));
+        server.start();
+        server.awaitStop();
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.clientsevermsgexample;
+
+// Receives everything a ChatServer has to report: chat lines under the
+// sender's name and status lines under "System". Called from server threads.
+@FunctionalInterface
+public interface ChatServerListener {
+    void onMessage(String sender, String content);
+}
@@ -0,0 +1,58 @@
+package org.example.clientsevermsgexample;
+
+import java.util.Map;
+
+// What a running ChatServer registers with the platform MBean server as
+// org.example.clientsevermsgexample:type=ChatServer,port=<port>. Counts are
+// since the server was created, rates over the last second or more, and
+// timings in nanoseconds since the server was created or resetTimings().
+public interface ChatServerMetricsMXBean {
+    int getActiveConnections();
+
+    long getConnectionsAccepted();
+
+    long getConnectionsClosed();
+
+    long getConnectionsRejected();
+
+    long getMessagesIn();
+
+    long getBytesIn();
+
+    long getMessagesOut();
+
+    long getBytesOut();
+
+    double getMessagesInPerSecond();
+
+    double getBytesInPerSecond();
+
+    double getMessagesOutPerSecond();
+
+    double getBytesOutPerSecond();
+
+    // Frames queued per client id
+    Map<Integer, Integer> getQueueDepths();
+
+    int getMaxQueueDepth();
+
+    long getFanOutCount();
+
+    long getFanOutP50Nanos();
+
+    long getFanOutP99Nanos();
+
+    long getFanOutP999Nanos();
+
+    long getFanOutMaxNanos();
+
+    long getWriteP50Nanos();
+
+    long getWriteP99Nanos();
+
+    long getWriteP999Nanos();
+
+    long getWriteMaxNanos();
+
+    void resetTimings();
+}
@@ -0,0 +1,347 @@
+package org.example.clientsevermsgexample;
+
+import java.io.UTFDataFormatException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Protocol state of one client connection, independent of how its socket is
+// serviced. The owning engine feeds it decoded input and supplies sendFrame();
+// everything about legacy vs. binary clients is decided here.
+abstract class ChatSession {
+    final int id;
+    final String clientAddress;
+    // Event loop the session is pinned to, 0 for engines without loops
+    final int shard;
+    protected final ChatHub hub;
+    // Rooms other than the lobby, maintained by the hub
+    final Set<String> rooms = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean negotiated = false;
+    private volatile boolean binary = false;
+    // Set once the client has been replayed what it missed and gets live lines
+    private volatile boolean started = false;
+    // Whether large frames to this client go out deflated
+    private volatile boolean compress = false;
+    // Set once the other end introduced itself as a server
+    private volatile boolean peer = false;
+    // Messages broadcast before the client was started
+    private final ArrayDeque<ChatMessage> pending = new ArrayDeque<>();
+    private final int pendingLimit;
+    // Journaled messages up to here were already replayed
+    private volatile long replayedUpTo = 0;
+    // System.nanoTime() of the last input, for the reaper
+    private volatile long lastReceived = System.nanoTime();
+    // Only touched by whoever reads this client's input. The name as UTF-8,
+    // and the raw room name of the last ROOM_TEXT with its key, so a client
+    // talking in one room costs no Strings per line.
+    private String encodedName;
+    private byte[] encodedNameBytes;
+    private byte[] lastRoom;
+    private String lastRoomKey;
+    private byte[] lastRoomKeyBytes;
+
+    ChatSession(int id, String clientAddress, ChatHub hub, int pendingLimit) {
+        this(id, clientAddress, 0, hub, pendingLimit);
+    }
+
+    ChatSession(int id, String clientAddress, int shard, ChatHub hub, int pendingLimit) {
+        this.id = id;
+        this.clientAddress = clientAddress;
+        this.shard = shard;
+        this.hub = hub;
+        this.pendingLimit = pendingLimit;
+    }
+
+    // Interned through the hub's sender table, null until known
+    String name() {
+        return hub.nameOf(id);
+    }
+
+    boolean isNegotiated() {
+        return negotiated;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    long lastReceived() {
+        return lastReceived;
+    }
+
+    // Engines that see partial input may call this as bytes arrive
+    void markReceived() {
+        lastReceived = System.nanoTime();
+    }
+
+    // Binary clients are started by the frame after HELLO, which may be a
+    // RESUME asking for a different replay
+    void onHello(int version) {
+        markReceived();
+        binary = true;
+        compress = version >= WireProtocol.COMPRESSION_VERSION && WireProtocol.COMPRESS_THRESHOLD > 0;
+        sendFrame(WireProtocol.hello(Math.min(version, WireProtocol.VERSION)), null);
+        negotiated = true;
+    }
+
+    void onLegacyDetected() {
+        negotiated = true;
+        start(() -> hub.replayTo(this));
+    }
+
+    // Replays the journal, then lets live lines through. replay returns the
+    // sequence number of the last line it sent.
+    private void start(LongSupplier replay) {
+        synchronized (pending) {
+            replayedUpTo = replay.getAsLong();
+            ChatMessage message;
+            while ((message = pending.poll()) != null) {
+                if (!wasReplayed(message)) {
+                    sendNow(message, null);
+                }
+                message.release();
+            }
+            // Set last so concurrent senders wait on the lock instead of overtaking
+            started = true;
+        }
+    }
+
+    // Returns false when the client has said goodbye
+    boolean onLegacyMessage(Frame frame) throws UTFDataFormatException {
+        markReceived();
+        hub.metrics.onMessageIn();
+        String message = frame.text();
+
+        if (message.endsWith(": exit")) {
+            frame.release();
+            hub.display("System", "Client " + clientAddress + " has disconnected");
+            return false;
+        }
+
+        String sender;
+        String content;
+        String name = name();
+        int colonIndex;
+        if (name != null && message.startsWith(name) && message.startsWith(UtfFrames.SEPARATOR, name.length())) {
+            // Same sender as last time, reuse the interned name
+            sender = name;
+            content = message.substring(name.length() + UtfFrames.SEPARATOR.length());
+        } else if ((colonIndex = message.indexOf(UtfFrames.SEPARATOR)) != -1) {
+            sender = hub.rename(this, message.substring(0, colonIndex));
+            content = message.substring(colonIndex + UtfFrames.SEPARATOR.length());
+        } else {
+            sender = "Client";
+            content = message;
+        }
+        hub.display(sender, content);
+
+        // Legacy peers get the received bytes back untouched
+        ChatMessage line = new ChatMessage(id, sender, content, frame);
+        hub.broadcast(line, this);
+        line.release();
+        return true;
+    }
+
+    // Same as onPacket() for the complete frame of frameSize bytes at the
+    // buffer's position, which it advances past. Chat lines are copied once,
+    // into a pooled frame, and go out without their text ever being decoded.
+    boolean onFrame(ByteBuffer buffer, int frameSize) throws ProtocolException {
+        byte type = buffer.get(buffer.position());
+        if (!started || (type != WireProtocol.TEXT && type != WireProtocol.ROOM_TEXT)) {
+            return onPacket(WireProtocol.decode(buffer));
+        }
+        markReceived();
+        hub.metrics.onMessageIn();
+
+        int end = buffer.position() + frameSize;
+        int textStart = WireProtocol.payloadStart(buffer, buffer.position());
+        String room = null;
+        byte[] roomBytes = null;
+        if (type == WireProtocol.ROOM_TEXT) {
+            int roomStart = WireProtocol.roomStart(buffer, textStart, end);
+            int roomLength = WireProtocol.varintAt(buffer, textStart);
+            if (!isLastRoom(buffer, roomStart, roomLength)) {
+                byte[] raw = new byte[roomLength];
+                buffer.get(roomStart, raw);
+                lastRoomKey = hub.roomKey(new String(raw, StandardCharsets.UTF_8));
+                lastRoomKeyBytes = lastRoomKey != null ? lastRoomKey.getBytes(StandardCharsets.UTF_8) : null;
+                lastRoom = raw;
+            }
+            room = lastRoomKey;
+            roomBytes = lastRoomKeyBytes;
+            textStart = roomStart + roomLength;
+        }
+        String sender = name();
+        if (sender == null) {
+            sender = "Client";
+        }
+        if (sender != encodedName) {
+            encodedNameBytes = sender.getBytes(StandardCharsets.UTF_8);
+            encodedName = sender;
+        }
+        int textLength = end - textStart;
+        Frame frame = WireProtocol.chatLine(id, roomBytes, buffer, textStart, textLength);
+        buffer.position(end);
+
+        ChatMessage message = new ChatMessage(id, sender, encodedNameBytes, room, frame, textLength);
+        hub.display(message);
+        hub.broadcast(message, this);
+        message.release();
+        return true;
+    }
+
+    private boolean isLastRoom(ByteBuffer buffer, int start, int length) {
+        byte[] room = lastRoom;
+        if (room == null || room.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != room[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns false when the client has said goodbye
+    boolean onPacket(WireProtocol.Packet packet) throws ProtocolException {
+        markReceived();
+        hub.metrics.onMessageIn();
+        if (!started) {
+            if (packet.type() == WireProtocol.RESUME) {
+                long after = WireProtocol.sequence(packet);
+                start(() -> hub.resumeTo(this, after));
+                return true;
+            }
+            // Peer servers have no use for a replay
+            start(packet.type() == WireProtocol.PEER ? () -> 0 : () -> hub.replayTo(this));
+        }
+        switch (packet.type()) {
+            case WireProtocol.TEXT:
+                String sender = name();
+                if (sender == null) {
+                    sender = "Client";
+                }
+                ChatMessage line = new ChatMessage(id, sender, packet.text());
+                hub.display(line);
+                hub.broadcast(line, this);
+                return true;
+
+            case WireProtocol.ROOM_TEXT:
+                WireProtocol.RoomText roomText = WireProtocol.roomText(packet);
+                String author = name();
+                if (author == null) {
+                    author = "Client";
+                }
+                ChatMessage roomLine = new ChatMessage(id, author, roomText.text(), hub.roomKey(roomText.room()));
+                hub.display(roomLine);
+                hub.broadcast(roomLine, this);
+                return true;
+
+            case WireProtocol.SUBSCRIBE:
+                hub.subscribe(this, packet.text());
+                return true;
+
+            case WireProtocol.UNSUBSCRIBE:
+                hub.unsubscribe(this, packet.text());
+                return true;
+
+            case WireProtocol.JOIN:
+                String name = hub.rename(this, packet.text());
+                hub.sendRoster(this);
+                hub.display("System", name + " joined from " + clientAddress);
+                return true;
+
+            case WireProtocol.PEER:
+                long nodeId = WireProtocol.peer(packet);
+                peer = true;
+                hub.addPeer(this, nodeId);
+                return true;
+
+            case WireProtocol.RELAY:
+                if (peer) {
+                    hub.relayFromPeer(WireProtocol.relay(packet));
+                }
+                return true;
+
+            case WireProtocol.LEAVE:
+                hub.display("System", "Client " + clientAddress + " has disconnected");
+                return false;
+
+            case WireProtocol.BACKLOG:
+                hub.sendBacklog(this, WireProtocol.backlogSize(packet));
+                return true;
+
+            case WireProtocol.QUERY:
+                hub.sendQueryResults(this, WireProtocol.query(packet));
+                return true;
+
+            case WireProtocol.PING:
+                sendControl(WireProtocol.control(WireProtocol.PONG, WireProtocol.SERVER_ID));
+                return true;
+
+            default:
+                // PONG and frame types from newer clients need no handling
+                return true;
+        }
+    }
+
+    void send(ChatMessage message, ChatSession from) {
+        if (!started) {
+            synchronized (pending) {
+                if (!started) {
+                    if (pending.size() >= pendingLimit) {
+                        ChatMessage dropped = pending.poll();
+                        if (dropped != null) {
+                            dropped.release();
+                        }
+                    }
+                    pending.add(message.retain());
+                    return;
+                }
+            }
+        }
+        if (!wasReplayed(message)) {
+            sendNow(message, from);
+        }
+    }
+
+    // A line journaled just before we replayed can also reach us live
+    private boolean wasReplayed(ChatMessage message) {
+        return message.sequence != 0 && message.sequence <= replayedUpTo;
+    }
+
+    private void sendNow(ChatMessage message, ChatSession from) {
+        Frame frame;
+        if (binary) {
+            frame = compress ? message.compressedFrame() : message.binaryFrame();
+        } else {
+            frame = message.legacyFrame();
+        }
+        if (frame != null) {
+            sendFrame(frame, from);
+        }
+    }
+
+    // Control frames only mean something to binary clients
+    void sendControl(Frame frame) {
+        if (negotiated && binary) {
+            sendFrame(frame, null);
+        }
+    }
+
+    // Queues an encoded frame for this client; from is the session whose
+    // input caused it, if any
+    abstract void sendFrame(Frame frame, ChatSession from);
+
+    abstract int getQueueDepth();
+
+    abstract boolean isOpen();
+
+    abstract void close();
+}
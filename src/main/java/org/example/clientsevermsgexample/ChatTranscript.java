@@ -0,0 +1,40 @@
+package org.example.clientsevermsgexample;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListView;
+
+import java.util.List;
+
+// Backs a chat window's ListView. The list only creates nodes for the rows
+// on screen, and the model keeps at most maxLines entries; older ones are
+// dropped as new batches arrive. Must be used from the FX thread.
+final class ChatTranscript {
+    static final int DEFAULT_MAX_LINES = Integer.getInteger("chat.ui.maxLines", 5000);
+
+    private final ListView<ChatLine> listView;
+    private final int maxLines;
+
+    ChatTranscript(ListView<ChatLine> listView) {
+        this(listView, DEFAULT_MAX_LINES);
+    }
+
+    ChatTranscript(ListView<ChatLine> listView, int maxLines) {
+        this.listView = listView;
+        this.maxLines = Math.max(1, maxLines);
+        listView.setCellFactory(view -> new ChatLineCell());
+        listView.setFocusTraversable(false);
+    }
+
+    void append(List<ChatLine> batch) {
+        ObservableList<ChatLine> items = listView.getItems();
+        items.addAll(batch);
+
+        int excess = items.size() - maxLines;
+        if (excess > 0) {
+            items.remove(0, excess);
+        }
+
+        // Keep following the newest message, as the old VBox height listener did
+        listView.scrollTo(items.size() - 1);
+    }
+}
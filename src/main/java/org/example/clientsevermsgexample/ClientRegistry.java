@@ -0,0 +1,70 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+// Thread-safe set of connected clients keyed by a stable id. Join and leave
+// are O(1) map operations; broadcasters iterate a cached array snapshot that
+// is only rebuilt on the first read after the membership changed, so steady
+// state fan-out allocates nothing and takes no lock.
+final class ClientRegistry<T> {
+    private final ConcurrentHashMap<Integer, T> clientsById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final IntFunction<T[]> arrayFactory;
+
+    private volatile T[] snapshot;
+    private volatile boolean dirty = false;
+
+    ClientRegistry(IntFunction<T[]> arrayFactory) {
+        this.arrayFactory = arrayFactory;
+        this.snapshot = arrayFactory.apply(0);
+    }
+
+    int nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    void add(int id, T client) {
+        clientsById.put(id, client);
+        dirty = true;
+    }
+
+    boolean remove(int id) {
+        boolean removed = clientsById.remove(id) != null;
+        if (removed) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    T get(int id) {
+        return clientsById.get(id);
+    }
+
+    int size() {
+        return clientsById.size();
+    }
+
+    // The returned array is shared and must not be modified by callers
+    T[] snapshot() {
+        if (dirty) {
+            rebuildSnapshot();
+        }
+        return snapshot;
+    }
+
+    void clear() {
+        clientsById.clear();
+        dirty = true;
+    }
+
+    private synchronized void rebuildSnapshot() {
+        // Re-checked under the lock so a slower rebuild can't publish a stale array
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        snapshot = clientsById.values().toArray(arrayFactory);
+    }
+}
@@ -1,27 +1,26 @@
 package org.example.clientsevermsgexample;
 
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.ProtocolException;
 import java.net.Socket;
 import java.net.URL;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ClientView implements Initializable {
     @FXML
@@ -31,19 +30,18 @@ public class ClientView implements Initializable {
     private TextField tf_message;
 
     @FXML
-    private ScrollPane sp_main;
-
-    @FXML
-    private VBox vbox_messages;
+    private ListView<ChatLine> lv_messages;
 
     @FXML
     private AnchorPane ap_main;
 
-    private Socket socket;
+    private volatile Socket socket;
     private DataInputStream inputStream;
-    private DataOutputStream outputStream;
-    private boolean connected = false;
-    private Thread receiveThread;
+    private volatile BatchingWriter writer;
+    private volatile boolean connected = false;
+    // Set by shutdown(), stops reconnecting
+    private volatile boolean closed = false;
+    private Thread connectionThread;
     private String username;
 
     public void setUsername(String username) {
@@ -51,11 +49,12 @@ public class ClientView implements Initializable {
     }
 
 
+    private final MessageBatcher messageBatcher = new MessageBatcher(this::appendMessages);
+    private ChatTranscript transcript;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        vbox_messages.heightProperty().addListener((observable, oldValue, newValue) -> {
-            sp_main.setVvalue((Double) newValue);
-        });
+        transcript = new ChatTranscript(lv_messages);
 
         button_send.setOnAction(event -> {
             sendMessage();
@@ -67,62 +66,148 @@ public class ClientView implements Initializable {
     }
 
     private int port = 161;  // Default port
+    private static final int SEND_QUEUE_CAPACITY = 256;
+    private static final long LEAVE_TIMEOUT_MILLIS = 500;
+    private static final String HISTORY_COMMAND = "/history";
+    private static final String SEARCH_COMMAND = "/search";
+    private static final String MORE_COMMAND = "/more";
+    private static final String JOIN_COMMAND = "/join";
+    private static final String LEAVE_COMMAND = "/leave";
+    private static final int SEARCH_PAGE_SIZE = 50;
+    private static final long MIN_RETRY_MILLIS = 500;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    // The last search, to ask for its next page
+    private volatile WireProtocol.Query lastQuery;
+    // Set once the server's HELLO says it takes COMPRESSED frames
+    private volatile boolean compress = false;
+    // Journal sequence number of the last line received, sent when reconnecting
+    private volatile long lastSequence = 0;
 
     public void setPort(int port) {
         this.port = port;
-        Platform.runLater(this::connectToServer);
+        connectionThread = new Thread(this::stayConnected, "client-connection");
+        connectionThread.setDaemon(true);
+        connectionThread.start();
     }
 
-    private void connectToServer() {
-        try {
-            socket = new Socket("localhost", port);
-            addMessage("System", "Connected to server", false);
+    // Connects, receives until the connection drops and then dials again,
+    // backing off exponentially with jitter, until shutdown()
+    private void stayConnected() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (!closed) {
+            boolean linked = false;
+            try {
+                connectToServer();
+                linked = true;
+                retryMillis = MIN_RETRY_MILLIS;
+                receive();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                addMessage("System", (linked ? "Lost connection to server: " : "Failed to connect to server: ")
+                        + e.getMessage() + ", retrying in " + (retryMillis + 999) / 1000 + "s", false);
+            } finally {
+                disconnect();
+            }
 
-            inputStream = new DataInputStream(socket.getInputStream());
-            outputStream = new DataOutputStream(socket.getOutputStream());
-            connected = true;
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(retryMillis / 2, retryMillis + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
 
-            startReceiving();
+    private void connectToServer() throws IOException {
+        socket = new Socket("localhost", port);
+
+        WriteOptions writeOptions = WriteOptions.fromSystemProperties();
+        socket.setTcpNoDelay(writeOptions.tcpNoDelay);
+        inputStream = new DataInputStream(socket.getInputStream());
+        // Sends are queued from the FX thread, so a full queue must not block
+        // it; see send()
+        writer = new BatchingWriter(socket.getOutputStream(),
+                new OutboundQueue<>(SEND_QUEUE_CAPACITY, OverflowPolicy.DISCONNECT), writeOptions, e -> {
+                    addMessage("System", "Failed to send message: " + e.getMessage(), false);
+                    disconnect();
+                });
+
+        Thread writerThread = new Thread(writer, "client-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        // Ask for the binary protocol, pick up where we left off if this is a
+        // reconnect, and introduce ourselves
+        writer.offer(WireProtocol.hello(WireProtocol.VERSION));
+        long resumeAfter = lastSequence;
+        if (resumeAfter != 0) {
+            writer.offer(WireProtocol.resume(resumeAfter));
+        }
+        writer.offer(WireProtocol.join(0, username));
 
-        } catch (IOException e) {
-            addMessage("System", "Failed to connect to server: " + e.getMessage(), false);
+        if (inputStream.readUnsignedShort() != 0) {
+            throw new ProtocolException("Server does not support the binary protocol");
         }
+        compress = WireProtocol.readHello(inputStream) >= WireProtocol.COMPRESSION_VERSION;
+        connected = true;
+        addMessage("System", resumeAfter != 0 ? "Reconnected to server" : "Connected to server", false);
     }
 
-    private void startReceiving() {
-        receiveThread = new Thread(() -> {
-            try {
-                while (connected) {
-                    String message = inputStream.readUTF();
-                    Platform.runLater(() -> {
-                        // If the message starts with "Server:", display as is
-                        // Otherwise, display just the message
-                        if (message.startsWith("Server:")) {
-                            addMessage("Server", message.substring(7).trim(), false);
-                        } else {
-                            // Extract username and message
-                            int colonIndex = message.indexOf(": ");
-                            if (colonIndex != -1) {
-                                String sender = message.substring(0, colonIndex);
-                                String content = message.substring(colonIndex + 2);
-                                addMessage(sender, content, false);
-                            } else {
-                                addMessage("System", message, false);
-                            }
-                        }
-                    });
-                }
-            } catch (IOException e) {
-                if (connected) {
-                    Platform.runLater(() -> {
-                        addMessage("System", "Lost connection to server: " + e.getMessage(), false);
-                    });
-                    disconnect();
-                }
+    // Returns when the client shuts down, throws when the connection drops
+    private void receive() throws IOException {
+        // Sender id to name, as announced by the server. Ids are per connection.
+        SenderTable names = new SenderTable();
+
+        while (!closed) {
+            WireProtocol.Packet packet = WireProtocol.read(inputStream);
+            switch (packet.type()) {
+                case WireProtocol.TEXT:
+                    String sender = names.getOrDefault(packet.sender(), "Client");
+                    String content = packet.text();
+                    addMessage(sender, content, false);
+                    break;
+                case WireProtocol.ROOM_TEXT:
+                    WireProtocol.RoomText roomText = WireProtocol.roomText(packet);
+                    String author = names.getOrDefault(packet.sender(), "Client");
+                    addMessage(author + " #" + roomText.room(), roomText.text(), false);
+                    break;
+                case WireProtocol.HISTORY:
+                    WireProtocol.History history = WireProtocol.history(packet);
+                    addMessage(history.sender(), history.text(), history.sender().equals(username));
+                    break;
+                case WireProtocol.SEQUENCE:
+                    lastSequence = Math.max(lastSequence, WireProtocol.sequence(packet));
+                    break;
+                case WireProtocol.QUERY_DONE:
+                    long nextCursor = WireProtocol.queryDone(packet);
+                    WireProtocol.Query query = lastQuery;
+                    if (nextCursor != 0 && query != null) {
+                        lastQuery = new WireProtocol.Query(query.from(), query.to(), nextCursor, query.limit(), query.sender());
+                        addMessage("System", "Type " + MORE_COMMAND + " for more results", false);
+                    } else {
+                        lastQuery = null;
+                        addMessage("System", "End of search results", false);
+                    }
+                    break;
+                case WireProtocol.JOIN:
+                    names.put(packet.sender(), packet.text());
+                    break;
+                case WireProtocol.LEAVE:
+                    String name = names.remove(packet.sender());
+                    if (name != null) {
+                        addMessage("System", name + " left the chat", false);
+                    }
+                    break;
+                case WireProtocol.PING:
+                    writer.offer(WireProtocol.control(WireProtocol.PONG, 0));
+                    break;
+                default:
+                    break;
             }
-        });
-        receiveThread.setDaemon(true);
-        receiveThread.start();
+        }
     }
 
 
@@ -136,58 +221,143 @@ public class ClientView implements Initializable {
             return;
         }
 
-        try {
-            // Send both username and message
-            String fullMessage = username + ": " + messageToSend;
-            outputStream.writeUTF(fullMessage);
-            addMessage(username, messageToSend, true);
+        if (messageToSend.startsWith(HISTORY_COMMAND)) {
+            requestHistory(messageToSend.substring(HISTORY_COMMAND.length()).trim());
             tf_message.clear();
-        } catch (IOException e) {
-            addMessage("System", "Failed to send message: " + e.getMessage(), false);
-            disconnect();
+            return;
+        }
+        if (messageToSend.startsWith(SEARCH_COMMAND)) {
+            search(messageToSend.substring(SEARCH_COMMAND.length()).trim());
+            tf_message.clear();
+            return;
+        }
+        if (messageToSend.startsWith(JOIN_COMMAND + " ") || messageToSend.startsWith(LEAVE_COMMAND + " ")) {
+            boolean join = messageToSend.startsWith(JOIN_COMMAND);
+            String room = messageToSend.substring(messageToSend.indexOf(' ') + 1).trim();
+            if (!room.isEmpty()) {
+                send(WireProtocol.subscribe(join ? WireProtocol.SUBSCRIBE : WireProtocol.UNSUBSCRIBE, room));
+                addMessage("System", (join ? "Joined #" : "Left #") + room, false);
+            }
+            tf_message.clear();
+            return;
+        }
+        // "#room text" goes to one room instead of the lobby
+        if (messageToSend.startsWith("#")) {
+            int space = messageToSend.indexOf(' ');
+            if (space > 1 && space < messageToSend.length() - 1) {
+                String room = messageToSend.substring(1, space);
+                String text = messageToSend.substring(space + 1);
+                if (!send(outgoing(WireProtocol.roomText(0, room, text)))) {
+                    addMessage("System", "Failed to send message: connection closed", false);
+                    return;
+                }
+                addMessage(username + " #" + room, text, true);
+                tf_message.clear();
+                return;
+            }
+        }
+        if (messageToSend.equals(MORE_COMMAND)) {
+            WireProtocol.Query query = lastQuery;
+            if (query == null) {
+                addMessage("System", "No more search results", false);
+            } else {
+                send(WireProtocol.query(query));
+            }
+            tf_message.clear();
+            return;
+        }
+
+        // The server knows who we are from our JOIN, only the text goes out
+        if (!send(outgoing(WireProtocol.text(0, messageToSend)))) {
+            addMessage("System", "Failed to send message: connection closed", false);
+            return;
         }
+        addMessage(username, messageToSend, true);
+        tf_message.clear();
     }
 
 
-    private void addMessage(String sender, String messageContent, boolean isSentByMe) {
-        HBox hBox = new HBox();
-        hBox.setPadding(new Insets(5, 10, 5, 10));
+    // Queues a frame without waiting. A full queue means the server stopped
+    // reading long ago, so the connection is dropped and dialled again rather
+    // than freezing the window.
+    private boolean send(Frame frame) {
+        if (writer.offer(frame)) {
+            return true;
+        }
+        if (connected) {
+            addMessage("System", "Server is not keeping up, reconnecting", false);
+            disconnect();
+        }
+        return false;
+    }
 
-        Text senderText = new Text(sender + ": ");
-        TextFlow senderTextFlow = new TextFlow(senderText);
+    // Large pastes go out deflated when the server can take them
+    private Frame outgoing(Frame frame) {
+        return compress ? WireProtocol.compress(frame) : frame;
+    }
 
-        Text messageText = new Text(messageContent);
-        TextFlow messageTextFlow = new TextFlow(messageText);
-        messageTextFlow.setPadding(new Insets(5));
+    // "/history" asks for everything the server has kept, "/history 20" for the last 20 lines
+    private void requestHistory(String count) {
+        int messages;
+        try {
+            messages = count.isEmpty() ? 0 : Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            addMessage("System", "Usage: " + HISTORY_COMMAND + " [lines]", false);
+            return;
+        }
+        send(WireProtocol.backlog(messages));
+    }
 
-        if (isSentByMe) {
-            hBox.setAlignment(Pos.CENTER_RIGHT);
-            messageTextFlow.setStyle("-fx-background-color: #90EE90; -fx-background-radius: 10px;");
-        } else {
-            hBox.setAlignment(Pos.CENTER_LEFT);
-            messageTextFlow.setStyle("-fx-background-color: #F0F0F0; -fx-background-radius: 10px;");
+    // "/search <sender or *> [HH:mm HH:mm]" finds what someone sent today,
+    // optionally only between the two times
+    private void search(String arguments) {
+        String[] parts = arguments.split("\\s+");
+        if (parts[0].isEmpty() || (parts.length != 1 && parts.length != 3)) {
+            addMessage("System", "Usage: " + SEARCH_COMMAND + " <sender or *> [HH:mm HH:mm]", false);
+            return;
         }
 
-        hBox.getChildren().addAll(senderTextFlow, messageTextFlow);
-        Platform.runLater(() -> {
-            vbox_messages.getChildren().add(hBox);
-        });
+        String sender = parts[0].equals("*") ? null : parts[0];
+        long from = 0;
+        long to = 0;
+        if (parts.length == 3) {
+            try {
+                from = todayAt(parts[1]);
+                to = todayAt(parts[2]);
+            } catch (DateTimeParseException e) {
+                addMessage("System", "Times look like 10:00", false);
+                return;
+            }
+        }
+        lastQuery = new WireProtocol.Query(from, to, 0, SEARCH_PAGE_SIZE, sender);
+        send(WireProtocol.query(lastQuery));
+    }
+
+    private static long todayAt(String time) {
+        return LocalDate.now().atTime(LocalTime.parse(time)).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
+    // Safe to call from any thread
+    private void addMessage(String sender, String messageContent, boolean isSentByMe) {
+        messageBatcher.post(sender, messageContent, isSentByMe);
+    }
+
+    // Runs on the FX thread with everything posted since the previous flush
+    private void appendMessages(List<ChatLine> batch) {
+        transcript.append(batch);
+    }
+
+    // Closes the current connection; the connection thread dials again unless shut down
     private void disconnect() {
         connected = false;
 
         try {
-            if (receiveThread != null) {
-                receiveThread.interrupt();
-            }
-
             if (inputStream != null) {
                 inputStream.close();
             }
 
-            if (outputStream != null) {
-                outputStream.close();
+            if (writer != null) {
+                writer.close();
             }
 
             if (socket != null && !socket.isClosed()) {
@@ -201,6 +371,15 @@ public class ClientView implements Initializable {
 
     // Call this method when window is closing
     public void shutdown() {
+        // Say goodbye so the server doesn't have to wait for a socket error
+        if (connected && writer != null) {
+            writer.offer(WireProtocol.control(WireProtocol.LEAVE, 0));
+            writer.closeGracefully(LEAVE_TIMEOUT_MILLIS);
+        }
+        closed = true;
+        if (connectionThread != null) {
+            connectionThread.interrupt();
+        }
         disconnect();
     }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package org.example.clientsevermsgexample;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+// Relays chat lines between server instances that list each other in
+// chat.cluster.peers, so clients on different nodes share one conversation.
+//
+// Every node dials each of its peers on their normal chat port and only ever
+// writes to the links it dialled. Lines that arrive from a peer are delivered
+// to local clients and never forwarded again, so in a full mesh each line
+// crosses each link exactly once. Lines carry the id of the node they started
+// on and a sequence number per origin; anything at or below the last number
+// seen from that origin is dropped, which also covers two nodes that end up
+// linked twice.
+//
+// Node ids are picked at random on start, so a restarted node counts as a new
+// origin. Lines sent while a link is down are not resent.
+final class Cluster {
+    private static final int LINK_QUEUE_CAPACITY = 4096;
+    private static final long MIN_RETRY_MILLIS = 500;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    // Guarded by links
+    private long sequence = 0;
+    // Last sequence number delivered per origin node
+    private final ConcurrentHashMap<Long, AtomicLong> lastSeen = new ConcurrentHashMap<>();
+    private final List<PeerLink> links = new ArrayList<>();
+    private final WriteOptions writeOptions;
+    private final BiConsumer<String, String> display;
+    private volatile boolean running = false;
+
+    Cluster(List<InetSocketAddress> peers, WriteOptions writeOptions, BiConsumer<String, String> display) {
+        this.writeOptions = writeOptions;
+        this.display = display;
+        for (InetSocketAddress peer : peers) {
+            links.add(new PeerLink(peer));
+        }
+    }
+
+    void start() {
+        running = true;
+        for (PeerLink link : links) {
+            Thread thread = new Thread(link, "chat-peer-" + link.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void stop() {
+        running = false;
+        for (PeerLink link : links) {
+            link.close();
+        }
+    }
+
+    // Sends a line that started on this node to every connected peer,
+    // encoded once for all of them. Numbered and queued under one lock, so
+    // every link carries the lines in sequence order; otherwise a peer would
+    // drop a line overtaken by a later one from another publisher.
+    void publish(ChatMessage message, boolean everyone) {
+        Frame frame = null;
+        Frame compressed = null;
+        synchronized (links) {
+            for (PeerLink link : links) {
+                BatchingWriter writer = link.writer;
+                if (writer != null) {
+                    if (frame == null) {
+                        frame = WireProtocol.relay(nodeId, ++sequence, everyone, message);
+                    }
+                    if (link.compress && compressed == null) {
+                        compressed = WireProtocol.compress(frame);
+                    }
+                    writer.offer(link.compress ? compressed : frame);
+                }
+            }
+        }
+    }
+
+    // True the first time a line from origin with this sequence number arrives
+    boolean firstSeen(long origin, long originSequence) {
+        if (origin == nodeId) {
+            return false;
+        }
+        AtomicLong last = lastSeen.computeIfAbsent(origin, k -> new AtomicLong());
+        long seen;
+        do {
+            seen = last.get();
+            if (originSequence <= seen) {
+                return false;
+            }
+        } while (!last.compareAndSet(seen, originSequence));
+        return true;
+    }
+
+    // "host:port,host:port", blank entries ignored
+    static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            String peer = entry.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Peer address needs a port: " + peer);
+            }
+            peers.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return peers;
+    }
+
+    // One outgoing connection, redialled with exponential backoff. Only
+    // answers pings on the way back; the peer's own link carries its lines.
+    private final class PeerLink implements Runnable {
+        final InetSocketAddress address;
+        final String name;
+        // Null while disconnected
+        volatile BatchingWriter writer;
+        // Whether the peer takes COMPRESSED frames
+        volatile boolean compress;
+        private volatile Socket socket;
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+            this.name = address.getHostString() + ":" + address.getPort();
+        }
+
+        @Override
+        public void run() {
+            long retryMillis = MIN_RETRY_MILLIS;
+            boolean reported = false;
+            while (running) {
+                try (Socket connection = new Socket(address.getHostString(), address.getPort())) {
+                    socket = connection;
+                    connection.setTcpNoDelay(writeOptions.tcpNoDelay);
+                    DataInputStream in = new DataInputStream(connection.getInputStream());
+                    BatchingWriter linkWriter = new BatchingWriter(connection.getOutputStream(),
+                            new OutboundQueue<>(LINK_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST), writeOptions, e -> close());
+                    Thread writerThread = new Thread(linkWriter, Thread.currentThread().getName() + "-writer");
+                    writerThread.setDaemon(true);
+                    writerThread.start();
+                    try {
+                        linkWriter.offer(WireProtocol.hello(WireProtocol.VERSION));
+                        linkWriter.offer(WireProtocol.peer(nodeId));
+                        if (in.readUnsignedShort() != 0) {
+                            throw new IOException("Peer does not speak the binary protocol");
+                        }
+                        compress = WireProtocol.readHello(in) >= WireProtocol.COMPRESSION_VERSION;
+                        writer = linkWriter;
+                        display.accept("System", "Linked to peer " + name);
+                        retryMillis = MIN_RETRY_MILLIS;
+                        reported = false;
+                        readUntilClosed(in, linkWriter);
+                    } finally {
+                        writer = null;
+                        linkWriter.close();
+                    }
+                } catch (IOException e) {
+                    if (running && !reported) {
+                        String reason = e.getMessage() != null ? e.getMessage() : "connection closed";
+                        display.accept("System", "Peer " + name + " unreachable: " + reason);
+                        reported = true;
+                    }
+                }
+
+                if (running) {
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextLong(retryMillis / 2, retryMillis + 1));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+                }
+            }
+        }
+
+        // The peer may replay its journal and announce its clients to us
+        // like to any binary client; all we need to do is stay alive
+        private void readUntilClosed(DataInputStream in, BatchingWriter linkWriter) throws IOException {
+            while (running) {
+                WireProtocol.Packet packet = WireProtocol.read(in);
+                if (packet.type() == WireProtocol.PING) {
+                    linkWriter.offer(WireProtocol.control(WireProtocol.PONG, 0));
+                }
+            }
+        }
+
+        void close() {
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
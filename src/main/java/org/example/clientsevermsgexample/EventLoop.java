@@ -0,0 +1,149 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One selector and the thread that owns it. Everything registered with the
+// selector is only touched on that thread; other threads hand it work with
+// execute(), through a lock-free queue. Wakeups are coalesced, so a burst of
+// tasks from other loops costs one selector wakeup rather than one each.
+// Only an I/O error on the selector itself ends the loop; an exception
+// thrown by a key's handler or a task is passed to failed() and the loop
+// goes on.
+abstract class EventLoop implements Runnable {
+    // Tasks run per pass, so a flood of them can't starve the sockets
+    private static final int MAX_TASKS_PER_PASS = 4096;
+
+    final int index;
+    final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Set once somebody has woken the selector since the loop last looked
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    EventLoop(int index) throws IOException {
+        this.index = index;
+        this.selector = Selector.open();
+    }
+
+    void start(String name) {
+        Thread loopThread = new Thread(this, name);
+        thread = loopThread;
+        loopThread.start();
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    // Runs task on this loop's thread, after anything handed over before it.
+    // Tasks handed over after the loop stopped are dropped.
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                // Cleared before looking at the queue, so a task added after
+                // the check always gets its wakeup
+                wakeupPending.set(false);
+                long timeout = timeout();
+                if (tasks.isEmpty()) {
+                    selector.select(timeout);
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        try {
+                            handle(key);
+                        } catch (RuntimeException e) {
+                            failed(key, e);
+                        }
+                    }
+                }
+                afterSelect();
+            }
+        } catch (IOException e) {
+            if (running) {
+                failed(e);
+            }
+        } finally {
+            running = false;
+            try {
+                shutdown();
+            } finally {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        for (int i = 0; i < MAX_TASKS_PER_PASS && (task = tasks.poll()) != null; i++) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failed(task, e);
+            }
+        }
+    }
+
+    // A selected key, on this loop's thread
+    abstract void handle(SelectionKey key);
+
+    // How long select() may block, 0 meaning until woken
+    long timeout() {
+        return 0;
+    }
+
+    // After each pass over the selected keys
+    void afterSelect() {
+    }
+
+    // Last thing on the loop's thread, before the selector closes
+    void shutdown() {
+    }
+
+    void failed(IOException e) {
+    }
+
+    // A bug handling one key; the loop carries on with the others, so this
+    // should get rid of whatever the key belongs to
+    void failed(SelectionKey key, RuntimeException e) {
+        key.cancel();
+    }
+
+    // A bug in a task; the loop carries on with the next one
+    void failed(Runnable task, RuntimeException e) {
+    }
+}
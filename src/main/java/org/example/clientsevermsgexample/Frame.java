@@ -0,0 +1,224 @@
+package org.example.clientsevermsgexample;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// An encoded frame, in either the legacy writeUTF format (length prefix
+// included) or the binary WireProtocol format, that is built once and then
+// shared by every recipient of a broadcast. The bytes live in a direct
+// buffer for channel writes and, only if a stream based client needs them,
+// in a heap array; each representation is created at most once.
+//
+// A frame can also be a region of a file holding one or more encoded frames,
+// e.g. journaled history, which is sent with FileChannel.transferTo and never
+// read into memory.
+//
+// Frames copied out of a socket read live in a BufferPool buffer and count
+// their holders: whoever keeps one past the call that handed it over
+// retains it and releases it when done, and the buffer goes back to the pool
+// with the last release. Only the NIO engine's queues hold on to them; for
+// every other frame retain() and release() do nothing.
+final class Frame {
+    private static final AtomicIntegerFieldUpdater<Frame> REFS =
+            AtomicIntegerFieldUpdater.newUpdater(Frame.class, "refs");
+
+    private volatile ByteBuffer direct;
+    private volatile byte[] heap;
+    private final FileChannel file;
+    private final long filePosition;
+    private final int fileCount;
+    private final boolean pooled;
+    private volatile int refs = 1;
+
+    private Frame(ByteBuffer direct, byte[] heap, boolean pooled) {
+        this.direct = direct;
+        this.heap = heap;
+        this.file = null;
+        this.filePosition = 0;
+        this.fileCount = 0;
+        this.pooled = pooled;
+    }
+
+    private Frame(FileChannel file, long position, int count) {
+        this.file = file;
+        this.filePosition = position;
+        this.fileCount = count;
+        this.pooled = false;
+    }
+
+    static Frame of(String message) throws UTFDataFormatException {
+        return new Frame(null, UtfFrames.encode(message), false);
+    }
+
+    // Encodes "sender: content" without building the concatenated string
+    static Frame of(String sender, String content) throws UTFDataFormatException {
+        return new Frame(null, UtfFrames.encode(sender, content), false);
+    }
+
+    static Frame wrap(byte[] bytes) {
+        return new Frame(null, bytes, false);
+    }
+
+    // The first size bytes of a buffer from BufferPool.allocate(), which the
+    // frame now owns
+    static Frame pooled(ByteBuffer buffer, int size) {
+        return new Frame(buffer.limit(size).position(0), null, true);
+    }
+
+    // The bytes must already be in the file and never change
+    static Frame region(FileChannel file, long position, int count) {
+        return new Frame(file, position, count);
+    }
+
+    // Reads one complete writeUTF frame as raw bytes so it can be forwarded untouched
+    static Frame read(DataInputStream in) throws IOException {
+        return readBody(in, in.readUnsignedShort());
+    }
+
+    // Same as read() when the length prefix has already been consumed
+    static Frame readBody(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[UtfFrames.HEADER_SIZE + length];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        in.readFully(bytes, UtfFrames.HEADER_SIZE, length);
+        return new Frame(null, bytes, false);
+    }
+
+    // Copies the frame at the source buffer's position into a pooled buffer
+    // and advances past it
+    static Frame copyOf(ByteBuffer source, int frameSize) {
+        ByteBuffer copy = BufferPool.allocate(frameSize);
+        copy.put(0, source, source.position(), frameSize);
+        source.position(source.position() + frameSize);
+        return pooled(copy, frameSize);
+    }
+
+    boolean isFileRegion() {
+        return file != null;
+    }
+
+    boolean isPooled() {
+        return pooled;
+    }
+
+    Frame retain() {
+        if (pooled) {
+            REFS.incrementAndGet(this);
+        }
+        return this;
+    }
+
+    // The frame must not be touched after its last release
+    void release() {
+        if (pooled && REFS.decrementAndGet(this) == 0) {
+            BufferPool.release(direct);
+        }
+    }
+
+    int size() {
+        if (file != null) {
+            return fileCount;
+        }
+        ByteBuffer buffer = direct;
+        return buffer != null ? buffer.limit() : heap.length;
+    }
+
+    byte get(int index) {
+        byte[] bytes = heap;
+        return bytes != null ? bytes[index] : direct.get(index);
+    }
+
+    // Decodes length bytes from offset on as UTF-8
+    String utf8(int offset, int length) {
+        byte[] bytes = heap;
+        if (bytes == null) {
+            bytes = new byte[length];
+            direct.get(offset, bytes);
+            offset = 0;
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // Only valid for writeUTF frames
+    String text() throws UTFDataFormatException {
+        byte[] bytes = heap;
+        // Read where the bytes are, without copying a heap frame off-heap
+        return UtfFrames.decode(bytes != null ? ByteBuffer.wrap(bytes) : buffer(), size());
+    }
+
+    // A fresh read-only view over the shared bytes, one per recipient. Not
+    // available for file regions.
+    ByteBuffer buffer() {
+        if (file != null) {
+            throw new UnsupportedOperationException("File regions are only transferred");
+        }
+        ByteBuffer buffer = direct;
+        if (buffer == null) {
+            synchronized (this) {
+                buffer = direct;
+                if (buffer == null) {
+                    buffer = ByteBuffer.allocateDirect(heap.length).put(heap).flip().asReadOnlyBuffer();
+                    direct = buffer;
+                }
+            }
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    // Copies the bytes into target at index, leaving its position alone. Not
+    // available for file regions.
+    void copyTo(ByteBuffer target, int index) {
+        copyTo(target, index, 0, size());
+    }
+
+    // Same for length bytes from offset on
+    void copyTo(ByteBuffer target, int index, int offset, int length) {
+        byte[] bytes = heap;
+        if (bytes != null) {
+            target.put(index, bytes, offset, length);
+        } else {
+            target.put(index, direct, offset, length);
+        }
+    }
+
+    // Writes the bytes from offset on as far as target takes them, returns
+    // how many it took. File regions go through transferTo.
+    long transferTo(WritableByteChannel target, long offset) throws IOException {
+        if (file != null) {
+            return file.transferTo(filePosition + offset, fileCount - offset, target);
+        }
+        return target.write(buffer().position((int) offset));
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        if (file != null) {
+            // Only for streams without a channel, this copies
+            WritableByteChannel target = Channels.newChannel(out);
+            long offset = 0;
+            while (offset < fileCount) {
+                offset += transferTo(target, offset);
+            }
+            return;
+        }
+        byte[] bytes = heap;
+        if (bytes == null) {
+            synchronized (this) {
+                bytes = heap;
+                if (bytes == null) {
+                    bytes = new byte[direct.limit()];
+                    direct.get(0, bytes);
+                    heap = bytes;
+                }
+            }
+        }
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,625 @@
+package org.example.clientsevermsgexample;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Append-only log of every chat line the server relays, split into segments
+// named after the sequence number of their first line. A segment is three
+// memory-mapped files:
+//
+//   <base>.bin  the lines as WireProtocol.HISTORY frames, back to back
+//   <base>.utf  the same lines as legacy writeUTF frames (none for lines over 64 KB)
+//   <base>.idx  per line: timestamp (long) | end in .bin (int) | end in .utf (int)
+//   <base>.snd  the lines of each sender, see SenderIndex (sealed segments only)
+//
+// A running journal holds a lock on the file "lock" in its directory, so a
+// second server pointed at the same directory fails to start instead of
+// writing over the first one's segments.
+//
+// The data files hold exactly the bytes a client receives, so any run of
+// lines goes out with FileChannel.transferTo, straight from the page cache,
+// without being decoded or re-encoded.
+//
+// Timestamps never go backwards, so time ranges are found by binary search:
+// first over the segments, then over a segment's index entries.
+final class Journal implements Closeable {
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final String BINARY = ".bin";
+    private static final String LEGACY = ".utf";
+    private static final String INDEX = ".idx";
+    private static final String SENDERS = ".snd";
+    private static final String LOCK = "lock";
+
+    // Lines for one client as file regions in its format, and the sequence
+    // number of the newest of them (0 if there are none)
+    record Backlog(List<Frame> frames, long lastSequence) {
+    }
+
+    // A page of query results as regions of HISTORY frames, and the cursor
+    // for the next page (0 when there is none)
+    record QueryResult(List<Frame> frames, long nextCursor) {
+    }
+
+    // One of a segment's files, mapped for appending and open for transfers
+    private static final class Part {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int position = 0;
+
+        Part(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        boolean fits(int size) {
+            return position + size <= buffer.capacity();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was written through the channel
+            }
+        }
+    }
+
+    private static final class Segment {
+        final long baseSequence;
+        final Part binary;
+        final Part legacy;
+        final Part index;
+        final Path sendersPath;
+        SenderIndex senders;
+        int count = 0;
+
+        Segment(long baseSequence, Part binary, Part legacy, Part index, Path sendersPath) {
+            this.baseSequence = baseSequence;
+            this.binary = binary;
+            this.legacy = legacy;
+            this.index = index;
+            this.sendersPath = sendersPath;
+        }
+
+        long timestamp(int line) {
+            return index.buffer.getLong(line * INDEX_ENTRY_SIZE);
+        }
+
+        // Where the line starts in the given format's file
+        int start(int line, boolean binaryFormat) {
+            return line == 0 ? 0 : index.buffer.getInt((line - 1) * INDEX_ENTRY_SIZE + (binaryFormat ? 8 : 12));
+        }
+
+        // First line stamped at or after the given time, count if there is none
+        int firstAtOrAfter(long timestamp) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamp(mid) < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Position of the name length inside the line's HISTORY frame
+        private int nameAt(int line) {
+            MappedByteBuffer bytes = binary.buffer;
+            // Type, then the sender and length varints, then the timestamp
+            int pos = skipVarint(bytes, skipVarint(bytes, start(line, true) + 1));
+            return pos + 8;
+        }
+
+        String sender(int line) {
+            MappedByteBuffer bytes = binary.buffer;
+            int pos = nameAt(line);
+            int length = WireProtocol.varintAt(bytes, pos);
+            byte[] name = new byte[length];
+            bytes.get(skipVarint(bytes, pos), name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        // Compares the UTF-8 name in place
+        boolean sentBy(int line, byte[] name) {
+            MappedByteBuffer bytes = binary.buffer;
+            int pos = nameAt(line);
+            if (WireProtocol.varintAt(bytes, pos) != name.length) {
+                return false;
+            }
+            pos = skipVarint(bytes, pos);
+            for (int i = 0; i < name.length; i++) {
+                if (bytes.get(pos + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long lastTimestamp() {
+            return count > 0 ? timestamp(count - 1) : 0;
+        }
+
+        // Bytes in use; the unwritten tails are sparse
+        long size() {
+            return (long) binary.position + legacy.position + index.position;
+        }
+
+        void force() {
+            binary.buffer.force(0, binary.position);
+            legacy.buffer.force(0, legacy.position);
+            index.buffer.force(0, index.position);
+        }
+
+        void close() {
+            binary.close();
+            legacy.close();
+            index.close();
+        }
+    }
+
+    private final JournalOptions options;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ScheduledExecutorService syncer;
+    private FileLock lock;
+    private Segment active;
+    private long nextSequence = 1;
+    private long lastTimestamp = 0;
+    private boolean closed = false;
+
+    private Journal(JournalOptions options) {
+        this.options = options;
+
+        if (options.fsyncMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "chat-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            syncer = null;
+        }
+    }
+
+    static Journal open(JournalOptions options) throws IOException {
+        Journal journal = new Journal(options);
+        try {
+            journal.recover();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        if (journal.syncer != null) {
+            journal.syncer.scheduleWithFixedDelay(journal::sync, options.fsyncMillis, options.fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+        return journal;
+    }
+
+    // Maps the segments left by a previous run and continues after their last line
+    private void recover() throws IOException {
+        Files.createDirectories(options.dir);
+        lock = lock(options.dir);
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(options.dir, "*" + INDEX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - INDEX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        bases.sort(Comparator.naturalOrder());
+
+        for (int i = 0; i < bases.size(); i++) {
+            boolean last = i == bases.size() - 1;
+            Segment segment = openSegment(bases.get(i), last);
+            scan(segment);
+            if (!last) {
+                segment.senders = SenderIndex.load(segment.sendersPath, segment.count);
+            }
+            if (segment.senders == null) {
+                segment.senders = SenderIndex.inMemory();
+                for (int line = 0; line < segment.count; line++) {
+                    segment.senders.add(segment.sender(line), line);
+                }
+                if (!last) {
+                    segment.senders.seal(segment.sendersPath);
+                }
+            }
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            Segment segment = openSegment(nextSequence, true);
+            segment.senders = SenderIndex.inMemory();
+            segments.add(segment);
+        }
+        active = segments.get(segments.size() - 1);
+        lastTimestamp = active.lastTimestamp();
+        enforceRetention(System.currentTimeMillis());
+    }
+
+    private void scan(Segment segment) {
+        MappedByteBuffer index = segment.index.buffer;
+        int binaryEnd = 0;
+        int legacyEnd = 0;
+        int line = 0;
+        while ((line + 1) * INDEX_ENTRY_SIZE <= index.capacity()) {
+            int pos = line * INDEX_ENTRY_SIZE;
+            int nextBinaryEnd = index.getInt(pos + 8);
+            int nextLegacyEnd = index.getInt(pos + 12);
+            // The timestamp is written last, zero is the unwritten tail
+            if (index.getLong(pos) == 0 || nextBinaryEnd <= binaryEnd || nextLegacyEnd < legacyEnd
+                    || nextBinaryEnd > segment.binary.buffer.capacity() || nextLegacyEnd > segment.legacy.buffer.capacity()) {
+                break;
+            }
+            binaryEnd = nextBinaryEnd;
+            legacyEnd = nextLegacyEnd;
+            line++;
+        }
+
+        segment.count = line;
+        segment.binary.position = binaryEnd;
+        segment.legacy.position = legacyEnd;
+        segment.index.position = line * INDEX_ENTRY_SIZE;
+        nextSequence = segment.baseSequence + line;
+    }
+
+    // Returns the line's sequence number, or 0 if it was not journaled
+    synchronized long append(ChatMessage message) throws IOException {
+        if (closed) {
+            return 0;
+        }
+
+        // Kept in order even if the clock steps back
+        long now = Math.max(System.currentTimeMillis(), lastTimestamp);
+        // Written straight from the message's bytes, without a frame of its own
+        int historySize = WireProtocol.historySize(message);
+        Frame legacyFrame = message.legacyFrame();
+        int legacySize = legacyFrame != null ? legacyFrame.size() : 0;
+        if (!fits(active, historySize, legacySize)) {
+            if (active.count == 0) {
+                // Relayed, but too big to keep
+                return 0;
+            }
+            roll(now);
+            if (!fits(active, historySize, legacySize)) {
+                return 0;
+            }
+        }
+
+        Segment segment = active;
+        WireProtocol.putHistory(segment.binary.buffer, segment.binary.position, message, now);
+        segment.binary.position += historySize;
+        if (legacyFrame != null) {
+            legacyFrame.copyTo(segment.legacy.buffer, segment.legacy.position);
+            segment.legacy.position += legacySize;
+        }
+
+        MappedByteBuffer index = segment.index.buffer;
+        int pos = segment.index.position;
+        index.putInt(pos + 8, segment.binary.position);
+        index.putInt(pos + 12, segment.legacy.position);
+        // Written last, so a line cut short by a crash reads as the end of the log
+        index.putLong(pos, now);
+        segment.index.position += INDEX_ENTRY_SIZE;
+        segment.senders.add(message.sender, segment.count);
+        segment.count++;
+        lastTimestamp = now;
+
+        if (options.fsyncMillis == 0) {
+            segment.force();
+        }
+        return nextSequence++;
+    }
+
+    private static boolean fits(Segment segment, int binarySize, int legacySize) {
+        return segment.binary.fits(binarySize) && segment.legacy.fits(legacySize) && segment.index.fits(INDEX_ENTRY_SIZE);
+    }
+
+    // What a newly connected client is sent
+    Backlog replay(boolean binaryFormat) {
+        if (options.replayMessages == 0) {
+            return new Backlog(List.of(), 0);
+        }
+        return backlog(options.replayMessages, options.replayMillis, binaryFormat);
+    }
+
+    // The newest lines, at most messages of them (0 for all that are kept)
+    // and none older than maxAgeMillis (0 for no limit), as regions of the
+    // journal files in one client format, oldest first
+    synchronized Backlog backlog(int messages, long maxAgeMillis, boolean binaryFormat) {
+        long cutoff = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        int remaining = messages > 0 ? messages : Integer.MAX_VALUE;
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        long lastSequence = 0;
+
+        for (int i = segments.size() - 1; i >= 0 && remaining > 0; i--) {
+            Segment segment = segments.get(i);
+            int to = segment.count;
+            int from = Math.max(Math.max(0, to - remaining), segment.firstAtOrAfter(cutoff));
+            if (from < to) {
+                Part part = binaryFormat ? segment.binary : segment.legacy;
+                int start = segment.start(from, binaryFormat);
+                int end = segment.start(to, binaryFormat);
+                if (end > start) {
+                    frames.addFirst(Frame.region(part.channel, start, end - start));
+                }
+                remaining -= to - from;
+                lastSequence = Math.max(lastSequence, segment.baseSequence + to - 1);
+            }
+            if (from > 0) {
+                // Everything older is out of range too
+                break;
+            }
+        }
+        return new Backlog(new ArrayList<>(frames), lastSequence);
+    }
+
+    // The newest lines after the given sequence number, at most limit of them,
+    // as HISTORY frame regions oldest first. For clients catching up after a
+    // reconnect; lines already dropped by retention are simply missing.
+    synchronized Backlog since(long after, int limit) {
+        long first = Math.max(after + 1, nextSequence - limit);
+        List<Frame> frames = new ArrayList<>();
+        long lastSequence = 0;
+        for (int i = firstSegment(Long.MIN_VALUE, first - 1); i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            int from = (int) Math.max(0, first - segment.baseSequence);
+            if (from < segment.count) {
+                addRegion(frames, segment, from, segment.count);
+                lastSequence = segment.baseSequence + segment.count - 1;
+            }
+        }
+        return new Backlog(frames, lastSequence);
+    }
+
+    // Lines stamped in [from, to), to being 0 for no end, by sender (null for
+    // anyone) and after the cursor, at most limit of them
+    synchronized QueryResult query(long from, long to, String sender, long after, int limit) {
+        byte[] name = sender != null ? sender.getBytes(StandardCharsets.UTF_8) : null;
+        List<Frame> frames = new ArrayList<>();
+        int remaining = limit;
+        long lastSequence = 0;
+
+        for (int i = firstSegment(from, after); i < segments.size() && remaining > 0; i++) {
+            Segment segment = segments.get(i);
+            int line = (int) Math.min(segment.count, Math.max(segment.firstAtOrAfter(from), after + 1 - segment.baseSequence));
+            int end = to > 0 ? segment.firstAtOrAfter(to) : segment.count;
+            // Consecutive matches go out as one region
+            int runStart = line;
+            int runEnd = line;
+
+            while (remaining > 0 && line < end) {
+                if (name != null) {
+                    line = segment.senders.nextLine(sender, line);
+                    if (line == -1 || line >= end) {
+                        break;
+                    }
+                    if (!segment.sentBy(line, name)) {
+                        line++;
+                        continue;
+                    }
+                }
+                if (line != runEnd) {
+                    addRegion(frames, segment, runStart, runEnd);
+                    runStart = line;
+                }
+                runEnd = line + 1;
+                lastSequence = segment.baseSequence + line;
+                remaining--;
+                line++;
+            }
+            addRegion(frames, segment, runStart, runEnd);
+
+            if (end < segment.count) {
+                // The rest is stamped after to
+                break;
+            }
+        }
+        return new QueryResult(frames, remaining == 0 ? lastSequence : 0);
+    }
+
+    // The first segment that can hold a line stamped at or after from with a
+    // sequence number after the cursor
+    private int firstSegment(long from, long after) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Segment segment = segments.get(mid);
+            if (segment.lastTimestamp() < from || segment.baseSequence + segment.count <= after + 1) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void addRegion(List<Frame> frames, Segment segment, int from, int to) {
+        if (to > from) {
+            int start = segment.start(from, true);
+            frames.add(Frame.region(segment.binary.channel, start, segment.start(to, true) - start));
+        }
+    }
+
+    // Copies every kept line, as HISTORY frames, to target. Returns the byte count.
+    long exportTo(WritableByteChannel target) throws IOException {
+        long total = 0;
+        for (Frame frame : backlog(0, 0, true).frames()) {
+            long offset = 0;
+            while (offset < frame.size()) {
+                offset += frame.transferTo(target, offset);
+            }
+            total += offset;
+        }
+        return total;
+    }
+
+    private void roll(long now) throws IOException {
+        active.force();
+        active.senders.seal(active.sendersPath);
+        active = openSegment(nextSequence, true);
+        active.senders = SenderIndex.inMemory();
+        segments.add(active);
+        enforceRetention(now);
+    }
+
+    // Deletes the oldest segments while they are too old or the journal is
+    // too big. The active segment always stays.
+    private void enforceRetention(long now) {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+
+        Segment oldest;
+        while ((oldest = segments.get(0)) != active
+                && ((options.maxBytes > 0 && total > options.maxBytes)
+                || (options.retentionMillis > 0 && now - oldest.lastTimestamp() > options.retentionMillis))) {
+            segments.remove(0);
+            total -= oldest.size();
+            // A transfer still reading from it fails and drops that client,
+            // which can only happen to one far behind the retention limit
+            oldest.close();
+            for (Path path : new Path[]{oldest.index.path, oldest.sendersPath, oldest.binary.path, oldest.legacy.path}) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Some platforms refuse while the file is still mapped, the
+                    // next start will try again
+                }
+            }
+        }
+    }
+
+    private void sync() {
+        Segment segment;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            segment = active;
+        }
+
+        try {
+            // Outside the lock, appends carry on while the pages are written out
+            segment.force();
+        } catch (UncheckedIOException e) {
+            // Tried again on the next tick
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                enforceRetention(System.currentTimeMillis());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (active != null) {
+                active.force();
+            }
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            if (lock != null) {
+                try {
+                    lock.channel().close();
+                } catch (IOException e) {
+                    // The lock goes with the process anyway
+                }
+            }
+        }
+    }
+
+    private static FileLock lock(Path dir) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another server in this JVM
+        } finally {
+            if (lock == null) {
+                channel.close();
+            }
+        }
+        if (lock == null) {
+            throw new IOException("Journal directory " + dir + " is in use by another server");
+        }
+        return lock;
+    }
+
+    private Segment openSegment(long baseSequence, boolean writable) throws IOException {
+        String base = String.format("%020d", baseSequence);
+        // Room for one index entry per 64 bytes of frames, the files are sparse
+        int indexBytes = options.segmentBytes / 64 * INDEX_ENTRY_SIZE;
+        return new Segment(baseSequence,
+                openPart(options.dir.resolve(base + BINARY), options.segmentBytes, writable),
+                openPart(options.dir.resolve(base + LEGACY), options.segmentBytes, writable),
+                openPart(options.dir.resolve(base + INDEX), indexBytes, writable),
+                options.dir.resolve(base + SENDERS));
+    }
+
+    private static int skipVarint(MappedByteBuffer bytes, int pos) {
+        while ((bytes.get(pos++) & 0x80) != 0) {
+            // Continuation bit set
+        }
+        return pos;
+    }
+
+    // A writable part is grown to its full size up front, a read-only one is
+    // mapped as it is. The channel stays open for transfers.
+    private static Part openPart(Path path, long size, boolean writable) throws IOException {
+        FileChannel channel;
+        if (writable) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        try {
+            long mapSize = writable ? Math.max(size, channel.size()) : channel.size();
+            return new Part(path, channel, channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, mapSize));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.clientsevermsgexample;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Where the server journals chat lines, how much of the journal it keeps, and
+// how much of it a newly connected client is replayed. A null dir turns the
+// journal off.
+final class JournalOptions {
+    final Path dir;
+    final int segmentBytes;
+    // 0 means no limit, for both retention settings
+    final long retentionMillis;
+    final long maxBytes;
+    // 0 forces every record to disk as it is written
+    final long fsyncMillis;
+    final int replayMessages;
+    // 0 replays the last replayMessages regardless of age
+    final long replayMillis;
+
+    JournalOptions(Path dir, int segmentBytes, long retentionMillis, long maxBytes, long fsyncMillis,
+                   int replayMessages, long replayMillis) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.retentionMillis = Math.max(0, retentionMillis);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.fsyncMillis = Math.max(0, fsyncMillis);
+        this.replayMessages = Math.max(0, replayMessages);
+        this.replayMillis = Math.max(0, replayMillis);
+    }
+
+    JournalOptions withDir(Path dir) {
+        return new JournalOptions(dir, segmentBytes, retentionMillis, maxBytes, fsyncMillis, replayMessages, replayMillis);
+    }
+
+    JournalOptions withReplay(int replayMessages, long replayMillis) {
+        return new JournalOptions(dir, segmentBytes, retentionMillis, maxBytes, fsyncMillis, replayMessages, replayMillis);
+    }
+
+    // chat.journal.dir set to an empty string turns the journal off. Left
+    // unset, the dir is null here and ServerOptions picks one per port.
+    static JournalOptions fromSystemProperties() {
+        String dir = System.getProperty("chat.journal.dir", "");
+        return new JournalOptions(
+                dir.isEmpty() ? null : Path.of(dir),
+                Integer.getInteger("chat.journal.segmentBytes", 8 * 1024 * 1024),
+                TimeUnit.HOURS.toMillis(Long.getLong("chat.journal.retentionHours", 24)),
+                Long.getLong("chat.journal.maxBytes", 256L * 1024 * 1024),
+                Long.getLong("chat.journal.fsyncMillis", 1000),
+                Integer.getInteger("chat.journal.replayMessages", 50),
+                TimeUnit.SECONDS.toMillis(Long.getLong("chat.journal.replaySeconds", 0)));
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-size histogram of durations in nanoseconds, in the style of
+// HdrHistogram: each power of two is split into the same number of linear
+// sub-buckets, so every recorded value is kept to within 1% (one part in
+// 128) from a nanosecond up to about 18 minutes, in a few thousand counters.
+// Recording is one atomic increment and never allocates, so any number of
+// threads can share one.
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // Larger values are counted as this
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(index(Math.min(Math.max(nanos, 0), MAX_VALUE)));
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that, the top
+    // SUB_BUCKET_BITS bits of the value pick the bucket within its power of two
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    private static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        return (long) ((index - SUB_BUCKETS) % HALF + HALF) << shift;
+    }
+
+    // Middle of the bucket
+    private static long valueAt(int index) {
+        long lowest = lowestValue(index);
+        return index < SUB_BUCKETS ? lowest : lowest + (lowestValue(index + 1) - lowest) / 2;
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // The value at or below which the given fraction (0 to 1) of recordings
+    // fall, 0 when nothing was recorded
+    long percentile(double fraction) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return valueAt(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return valueAt(i);
+            }
+        }
+        return 0;
+    }
+
+    void addAll(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    // "p50=1.2ms p99=3.4ms p999=10ms max=12ms"
+    String summary() {
+        return "p50=" + format(percentile(0.50)) + " p99=" + format(percentile(0.99))
+                + " p999=" + format(percentile(0.999)) + " max=" + format(max());
+    }
+
+    static String format(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        }
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return String.format("%.2fms", nanos / 1e6);
+        }
+        return String.format("%.2fs", nanos / 1e9);
+    }
+}
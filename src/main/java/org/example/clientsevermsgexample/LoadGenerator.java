@@ -0,0 +1,239 @@
+package org.example.clientsevermsgexample;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless load generator speaking the binary protocol. Each simulated user
+// is a pair of virtual threads, one sending at the configured rate and one
+// reading, so thousands of them are cheap. Lines start with their
+// System.nanoTime() at sending, and every delivery of one is timed against
+// it, which is only meaningful when everything runs on the same host:
+//
+//   java -cp target/classes -Dchat.load.users=2000 -Dchat.load.rate=2 \
+//        org.example.clientsevermsgexample.LoadGenerator 6666
+//
+// See LoadOptions for every setting; -Dchat.load.embedded=true starts a
+// server on the port in this JVM.
+public class LoadGenerator {
+    private final LoadOptions options;
+    private final int port;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    // Failed sessions by exception, a loaded server may answer HELLO too late
+    // and treat the user as a legacy client
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private volatile boolean running = true;
+
+    LoadGenerator(LoadOptions options, int port) {
+        this.options = options;
+        this.port = port;
+    }
+
+    void run() throws InterruptedException {
+        System.out.println("Load: " + options.describe() + ", against " + options.host + ":" + port);
+        long start = System.nanoTime();
+        for (int user = 0; user < options.users; user++) {
+            long connectAt = start + (long) (options.rampSeconds * 1e9 * user / options.users);
+            int id = user;
+            threads.execute(() -> simulate(id, connectAt));
+        }
+
+        long end = start + (long) (options.seconds * 1e9);
+        long reportNanos = (long) (options.reportSeconds * 1e9);
+        long lastReport = start;
+        long lastSent = 0;
+        long lastDelivered = 0;
+        while (System.nanoTime() < end) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(reportNanos, end - System.nanoTime()));
+            long now = System.nanoTime();
+            double elapsed = (now - lastReport) / 1e9;
+            long sentNow = sent.sum();
+            long deliveredNow = delivered.sum();
+            // Swapping would race with recorders, so copy then clear; a few
+            // samples may land in the next interval
+            LatencyHistogram snapshot = new LatencyHistogram();
+            snapshot.addAll(interval);
+            interval.reset();
+            total.addAll(snapshot);
+            System.out.printf("%5.0fs  users=%d  sent=%.0f/s  delivered=%.0f/s  %s%n",
+                    (now - start) / 1e9, connected.get(), (sentNow - lastSent) / elapsed,
+                    (deliveredNow - lastDelivered) / elapsed, snapshot.summary());
+            lastReport = now;
+            lastSent = sentNow;
+            lastDelivered = deliveredNow;
+        }
+
+        running = false;
+        threads.shutdownNow();
+        threads.awaitTermination(5, TimeUnit.SECONDS);
+        total.addAll(interval);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Total: sent %d (%.0f/s), delivered %d (%.0f/s), %d reconnects%n",
+                sent.sum(), sent.sum() / seconds, delivered.sum(), delivered.sum() / seconds, reconnects.sum());
+        System.out.println("Delivery latency: " + total.summary());
+        errors.forEach((error, count) -> System.out.println("Failed sessions: " + count.sum() + " x " + error));
+    }
+
+    // One user: connect, chat until its lifetime is up, leave, repeat
+    private void simulate(int user, long connectAt) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(connectAt - System.nanoTime());
+            while (running) {
+                long lifetime = options.churnSeconds > 0
+                        ? (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * options.churnSeconds * 1e9)
+                        : Long.MAX_VALUE;
+                try (Socket socket = new Socket(options.host, port)) {
+                    session(user, socket, lifetime);
+                } catch (IOException e) {
+                    if (running) {
+                        errors.computeIfAbsent(String.valueOf(e), k -> new LongAdder()).increment();
+                        // Don't hammer a server that is refusing us
+                        TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(100, 1000));
+                    }
+                }
+                if (running) {
+                    reconnects.increment();
+                }
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private void session(int user, Socket socket, long lifetimeNanos) throws IOException, InterruptedException {
+        socket.setTcpNoDelay(true);
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        String room = options.roomOf(user);
+
+        WireProtocol.hello(WireProtocol.VERSION).writeTo(out);
+        WireProtocol.join(0, "load-" + user).writeTo(out);
+        if (room != null) {
+            WireProtocol.subscribe(WireProtocol.SUBSCRIBE, room).writeTo(out);
+        }
+        out.flush();
+        if (in.readUnsignedShort() != 0) {
+            throw new IOException("Server does not speak the binary protocol");
+        }
+        WireProtocol.readHello(in);
+
+        connected.incrementAndGet();
+        try {
+            threads.execute(() -> receive(in, out));
+            long end = lifetimeNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + lifetimeNanos;
+            double meanGapNanos = options.rate > 0 ? 1e9 / options.rate : 0;
+            while (running && System.nanoTime() < end) {
+                if (meanGapNanos == 0) {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(end - System.nanoTime(), TimeUnit.SECONDS.toNanos(1)));
+                    continue;
+                }
+                // Poisson arrivals, so users don't send in lockstep
+                long gap = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanGapNanos);
+                TimeUnit.NANOSECONDS.sleep(Math.min(gap, end - System.nanoTime()));
+                if (!running || System.nanoTime() >= end) {
+                    break;
+                }
+                String text = line(options.nextSize());
+                Frame frame = room != null ? WireProtocol.roomText(0, room, text) : WireProtocol.text(0, text);
+                synchronized (out) {
+                    frame.writeTo(out);
+                    out.flush();
+                }
+                sent.increment();
+            }
+            synchronized (out) {
+                WireProtocol.control(WireProtocol.LEAVE, 0).writeTo(out);
+                out.flush();
+            }
+        } finally {
+            connected.decrementAndGet();
+        }
+    }
+
+    // Also answers the server's pings, so idle users aren't reaped
+    private void receive(DataInputStream in, OutputStream out) {
+        try {
+            while (running) {
+                WireProtocol.Packet packet = WireProtocol.read(in);
+                switch (packet.type()) {
+                    case WireProtocol.TEXT:
+                        record(new String(packet.payload(), StandardCharsets.UTF_8));
+                        break;
+                    case WireProtocol.ROOM_TEXT:
+                        record(WireProtocol.roomText(packet).text());
+                        break;
+                    case WireProtocol.PING:
+                        synchronized (out) {
+                            WireProtocol.control(WireProtocol.PONG, 0).writeTo(out);
+                            out.flush();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // The session closed the socket
+        }
+    }
+
+    // The text starts with the sender's nanoTime in decimal
+    private void record(String text) {
+        int space = text.indexOf(' ');
+        if (space <= 0) {
+            return;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(text, 0, space, 10);
+        } catch (NumberFormatException e) {
+            // Not one of ours
+            return;
+        }
+        interval.record(System.nanoTime() - sentAt);
+        delivered.increment();
+    }
+
+    private static String line(int size) {
+        StringBuilder text = new StringBuilder(size).append(System.nanoTime()).append(' ');
+        while (text.length() < size) {
+            text.append((char) ('a' + ThreadLocalRandom.current().nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6666;
+        LoadOptions options = LoadOptions.fromSystemProperties();
+
+        ChatServer server = null;
+        if (options.embedded) {
+            server = new ChatServer(new ServerOptions().setPort(port).setJournalDir(null));
+            server.start();
+        }
+        try {
+            new LoadGenerator(options, port).run();
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
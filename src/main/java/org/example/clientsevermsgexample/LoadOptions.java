@@ -0,0 +1,80 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// What LoadGenerator simulates, each from the system property named next to it.
+final class LoadOptions {
+    // chat.load.host
+    final String host;
+    // chat.load.users
+    final int users;
+    // chat.load.rampSeconds, spread over which the users connect
+    final double rampSeconds;
+    // chat.load.rate, lines per second per user, 0 for receive only
+    final double rate;
+    // chat.load.size, "64" for fixed size lines or "16-4096" for sizes
+    // uniformly distributed in that range, in characters
+    final int minSize;
+    final int maxSize;
+    // chat.load.roomSize, users per room, 0 keeps everyone in the lobby
+    // (every line then goes to every user)
+    final int roomSize;
+    // chat.load.churnSeconds, mean connection lifetime before a user
+    // leaves and reconnects, 0 for none
+    final double churnSeconds;
+    // chat.load.seconds
+    final double seconds;
+    // chat.load.reportSeconds
+    final double reportSeconds;
+    // chat.load.embedded, also run a ChatServer in this process
+    final boolean embedded;
+
+    private LoadOptions(String host, int users, double rampSeconds, double rate, String size, int roomSize,
+                        double churnSeconds, double seconds, double reportSeconds, boolean embedded) {
+        this.host = host;
+        this.users = Math.max(1, users);
+        this.rampSeconds = Math.max(0, rampSeconds);
+        this.rate = Math.max(0, rate);
+        int dash = size.indexOf('-');
+        int min = Integer.parseInt(size.substring(0, dash == -1 ? size.length() : dash).trim());
+        int max = dash == -1 ? min : Integer.parseInt(size.substring(dash + 1).trim());
+        // Room for the embedded send timestamp
+        this.minSize = Math.max(24, Math.min(min, max));
+        this.maxSize = Math.max(this.minSize, Math.max(min, max));
+        this.roomSize = Math.max(0, roomSize);
+        this.churnSeconds = Math.max(0, churnSeconds);
+        this.seconds = Math.max(1, seconds);
+        this.reportSeconds = Math.max(1, reportSeconds);
+        this.embedded = embedded;
+    }
+
+    static LoadOptions fromSystemProperties() {
+        return new LoadOptions(
+                System.getProperty("chat.load.host", "localhost"),
+                Integer.getInteger("chat.load.users", 1000),
+                Double.parseDouble(System.getProperty("chat.load.rampSeconds", "5")),
+                Double.parseDouble(System.getProperty("chat.load.rate", "1")),
+                System.getProperty("chat.load.size", "32-512"),
+                Integer.getInteger("chat.load.roomSize", 20),
+                Double.parseDouble(System.getProperty("chat.load.churnSeconds", "0")),
+                Double.parseDouble(System.getProperty("chat.load.seconds", "60")),
+                Double.parseDouble(System.getProperty("chat.load.reportSeconds", "5")),
+                Boolean.getBoolean("chat.load.embedded"));
+    }
+
+    int nextSize() {
+        return minSize == maxSize ? minSize : ThreadLocalRandom.current().nextInt(minSize, maxSize + 1);
+    }
+
+    // Null for the lobby
+    String roomOf(int user) {
+        return roomSize == 0 ? null : "load-" + user / roomSize;
+    }
+
+    String describe() {
+        return users + " users over " + rampSeconds + "s, " + rate + " lines/s each, " + minSize + "-" + maxSize
+                + " chars, " + (roomSize == 0 ? "all in the lobby" : roomSize + " per room")
+                + (churnSeconds > 0 ? ", reconnecting every ~" + churnSeconds + "s" : "")
+                + ", for " + seconds + "s";
+    }
+}
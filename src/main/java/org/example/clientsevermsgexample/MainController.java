@@ -1,5 +1,6 @@
 package org.example.clientsevermsgexample;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -10,9 +11,9 @@ import javafx.scene.control.*;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.net.Socket;
 import java.net.URL;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 
 public class MainController implements Initializable {
@@ -45,6 +46,9 @@ public class MainController implements Initializable {
     @FXML
     private Button user2_server;
 
+    // chat.scan.timeoutMillis, per probe
+    private static final long SCAN_TIMEOUT_MILLIS = Long.getLong("chat.scan.timeoutMillis", 2000);
+
     private ServerView serverController;
     private Stage serverStage;
 
@@ -98,14 +102,7 @@ public class MainController implements Initializable {
                 }
             }
 
-            try {
-                Socket testSocket = new Socket("localhost", port);
-                testSocket.close();
-            } catch (IOException e) {
-                resultArea.appendText("Error: Server must be started first on port " + port + "\n");
-                return;
-            }
-
+            // The client keeps dialling until the server is up, no need to probe it first
             clientController.setUsername(username);
             clientController.setPort(port);
 
@@ -124,27 +121,54 @@ public class MainController implements Initializable {
         }
     }
 
+    // Probes every port in the dropdown on each host in urlName (separated by
+    // commas or spaces) in parallel, printing results as they arrive
     @FXML
     void checkConnection(ActionEvent event) {
-        String host = urlName.getText();
-        if (host.isEmpty() || dropdownPort.getValue() == null) {
-            resultArea.setText("Please enter a hostname and select a port.");
+        List<String> hosts = new ArrayList<>();
+        for (String host : urlName.getText().split("[,\\s]+")) {
+            if (!host.isEmpty()) {
+                hosts.add(host);
+            }
+        }
+        if (hosts.isEmpty()) {
+            resultArea.setText("Please enter a hostname.");
             return;
         }
 
-        int port = Integer.parseInt(dropdownPort.getValue().toString());
+        List<Integer> ports = new ArrayList<>();
+        for (String port : dropdownPort.getItems()) {
+            ports.add(Integer.parseInt(port));
+        }
 
-        try {
-            resultArea.appendText("Attempting to connect to " + host + " on port " + port + "...\n");
-            Socket sock = new Socket(host, port);
-            resultArea.appendText(host + " is listening on port " + port + "\n");
-            sock.close();
-        } catch (UnknownHostException e) {
-            resultArea.setText("Error: " + e.getMessage() + "\n");
-            resultArea.appendText("The hostname '" + host + "' is invalid.\n");
-            resultArea.appendText("Try using 'localhost' or '127.0.0.1' instead.\n");
-        } catch (Exception e) {
-            resultArea.appendText(host + " is not listening on port " + port + "\n");
+        testBtn.setDisable(true);
+        resultArea.appendText("Scanning " + ports.size() + " ports on " + String.join(", ", hosts)
+                + " (timeout " + SCAN_TIMEOUT_MILLIS + " ms)...\n");
+        PortScanner.scan(hosts, ports, SCAN_TIMEOUT_MILLIS,
+                result -> Platform.runLater(() -> resultArea.appendText(describe(result))),
+                () -> Platform.runLater(() -> {
+                    resultArea.appendText("Scan finished\n");
+                    testBtn.setDisable(false);
+                }));
+    }
+
+    private static String describe(PortScanner.Result result) {
+        String host = result.host();
+        int port = result.port();
+        String latency = String.format("%.1f ms", result.latencyMillis());
+        switch (result.status()) {
+            case OPEN:
+                return host + " is listening on port " + port + " (" + latency + ")\n";
+            case CLOSED:
+                return host + " is not listening on port " + port + " (refused in " + latency + ")\n";
+            case TIMED_OUT:
+                return host + " did not answer on port " + port + " within " + SCAN_TIMEOUT_MILLIS + " ms\n";
+            case UNKNOWN_HOST:
+                return "Error: " + result.detail() + "\n"
+                        + "The hostname '" + host + "' is invalid.\n"
+                        + "Try using 'localhost' or '127.0.0.1' instead.\n";
+            default:
+                return host + (port != 0 ? " port " + port : "") + ": " + result.detail() + "\n";
         }
     }
 
@@ -0,0 +1,52 @@
+package org.example.clientsevermsgexample;
+
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Collects chat lines from any thread and hands them to the FX thread in
+// batches. At most one Platform.runLater is outstanding at a time, so however
+// fast messages arrive the event queue sees one flush per pulse, and each
+// flush becomes a single scene graph update.
+final class MessageBatcher {
+    // Keeps one flush from stalling a frame when a huge backlog builds up
+    private static final int MAX_PER_FLUSH = 2000;
+
+    private final Queue<ChatLine> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Consumer<List<ChatLine>> sink;
+
+    // The sink always runs on the FX thread
+    MessageBatcher(Consumer<List<ChatLine>> sink) {
+        this.sink = sink;
+    }
+
+    void post(String sender, String content, boolean isOwn) {
+        pending.add(new ChatLine(sender, content, isOwn));
+        if (flushScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::flush);
+        }
+    }
+
+    private void flush() {
+        // Cleared first so anything posted from here on schedules another flush
+        flushScheduled.set(false);
+
+        List<ChatLine> batch = new ArrayList<>(Math.min(pending.size(), MAX_PER_FLUSH));
+        ChatLine line;
+        while (batch.size() < MAX_PER_FLUSH && (line = pending.poll()) != null) {
+            batch.add(line);
+        }
+        if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::flush);
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.example.clientsevermsgexample;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Publishes a ChatServer's metrics as an MXBean and, when chat.metrics.port
+// is set, as plain text at http://127.0.0.1:<port>/metrics in the Prometheus
+// exposition format. The HTTP endpoint only listens on the loopback address
+// and renders on its own dispatcher thread, never on a server thread.
+final class MetricsEndpoint implements ChatServerMetricsMXBean {
+    private final ChatServer server;
+    private final ServerMetrics metrics;
+    private ObjectName name;
+    private HttpServer http;
+
+    private MetricsEndpoint(ChatServer server, ServerMetrics metrics) {
+        this.server = server;
+        this.metrics = metrics;
+    }
+
+    // Failures are reported to display, the chat server runs either way
+    static MetricsEndpoint start(ChatServer server, ServerMetrics metrics, ServerOptions options,
+                                 BiConsumer<String, String> display) {
+        MetricsEndpoint endpoint = new MetricsEndpoint(server, metrics);
+        if (options.isMetricsJmx()) {
+            try {
+                ObjectName objectName = new ObjectName(
+                        "org.example.clientsevermsgexample:type=ChatServer,port=" + options.getPort());
+                // Wrapped, as this class isn't public
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new StandardMBean(endpoint, ChatServerMetricsMXBean.class, true), objectName);
+                endpoint.name = objectName;
+            } catch (JMException e) {
+                display.accept("System", "Metrics not registered with JMX: " + e.getMessage());
+            }
+        }
+        if (options.getMetricsPort() > 0) {
+            try {
+                HttpServer httpServer = HttpServer.create(
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), options.getMetricsPort()), 0);
+                httpServer.createContext("/metrics", endpoint::serve);
+                httpServer.start();
+                endpoint.http = httpServer;
+                display.accept("System", "Metrics at http://127.0.0.1:" + options.getMetricsPort() + "/metrics");
+            } catch (IOException e) {
+                display.accept("System", "Metrics endpoint not started: " + e.getMessage());
+            }
+        }
+        return endpoint;
+    }
+
+    void stop() {
+        if (http != null) {
+            http.stop(0);
+            http = null;
+        }
+        if (name != null) {
+            MBeanServer beans = ManagementFactory.getPlatformMBeanServer();
+            try {
+                beans.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone
+            }
+            name = null;
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    String render() {
+        StringBuilder text = new StringBuilder(2048);
+        gauge(text, "chat_connections_active", getActiveConnections());
+        counter(text, "chat_connections_accepted_total", getConnectionsAccepted());
+        counter(text, "chat_connections_closed_total", getConnectionsClosed());
+        counter(text, "chat_connections_rejected_total", getConnectionsRejected());
+        counter(text, "chat_messages_in_total", getMessagesIn());
+        counter(text, "chat_bytes_in_total", getBytesIn());
+        counter(text, "chat_messages_out_total", getMessagesOut());
+        counter(text, "chat_bytes_out_total", getBytesOut());
+
+        ServerMetrics.Rates rates = metrics.rates();
+        gauge(text, "chat_messages_in_per_second", rates.messagesIn());
+        gauge(text, "chat_bytes_in_per_second", rates.bytesIn());
+        gauge(text, "chat_messages_out_per_second", rates.messagesOut());
+        gauge(text, "chat_bytes_out_per_second", rates.bytesOut());
+
+        text.append("# TYPE chat_queue_depth gauge\n");
+        int max = 0;
+        for (Map.Entry<Integer, Integer> depth : server.getQueueDepths().entrySet()) {
+            text.append("chat_queue_depth{client=\"").append(depth.getKey()).append("\"} ")
+                    .append(depth.getValue()).append('\n');
+            max = Math.max(max, depth.getValue());
+        }
+        gauge(text, "chat_queue_depth_max", max);
+
+        summary(text, "chat_fanout_seconds", metrics.fanOutTimes());
+        summary(text, "chat_write_seconds", metrics.writeTimes());
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, double value) {
+        text.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (String quantile : new String[] {"0.5", "0.99", "0.999"}) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.percentile(Double.parseDouble(quantile)) / 1e9).append('\n');
+        }
+        text.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return server.getClientCount();
+    }
+
+    @Override
+    public long getConnectionsAccepted() {
+        return metrics.acceptedCount();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return metrics.closedCount();
+    }
+
+    @Override
+    public long getConnectionsRejected() {
+        return metrics.rejectedCount();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return metrics.messagesInCount();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return metrics.bytesInCount();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return metrics.messagesOutCount();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return metrics.bytesOutCount();
+    }
+
+    @Override
+    public double getMessagesInPerSecond() {
+        return metrics.rates().messagesIn();
+    }
+
+    @Override
+    public double getBytesInPerSecond() {
+        return metrics.rates().bytesIn();
+    }
+
+    @Override
+    public double getMessagesOutPerSecond() {
+        return metrics.rates().messagesOut();
+    }
+
+    @Override
+    public double getBytesOutPerSecond() {
+        return metrics.rates().bytesOut();
+    }
+
+    @Override
+    public Map<Integer, Integer> getQueueDepths() {
+        return server.getQueueDepths();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (int depth : server.getQueueDepths().values()) {
+            max = Math.max(max, depth);
+        }
+        return max;
+    }
+
+    @Override
+    public long getFanOutCount() {
+        return metrics.fanOutTimes().count();
+    }
+
+    @Override
+    public long getFanOutP50Nanos() {
+        return metrics.fanOutTimes().percentile(0.5);
+    }
+
+    @Override
+    public long getFanOutP99Nanos() {
+        return metrics.fanOutTimes().percentile(0.99);
+    }
+
+    @Override
+    public long getFanOutP999Nanos() {
+        return metrics.fanOutTimes().percentile(0.999);
+    }
+
+    @Override
+    public long getFanOutMaxNanos() {
+        return metrics.fanOutTimes().max();
+    }
+
+    @Override
+    public long getWriteP50Nanos() {
+        return metrics.writeTimes().percentile(0.5);
+    }
+
+    @Override
+    public long getWriteP99Nanos() {
+        return metrics.writeTimes().percentile(0.99);
+    }
+
+    @Override
+    public long getWriteP999Nanos() {
+        return metrics.writeTimes().percentile(0.999);
+    }
+
+    @Override
+    public long getWriteMaxNanos() {
+        return metrics.writeTimes().max();
+    }
+
+    @Override
+    public void resetTimings() {
+        metrics.resetTimings();
+    }
+}
@@ -0,0 +1,718 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Selector based alternative to the thread-per-client loop in
+// BlockingServerEngine. Speaks both the legacy writeUTF framing and the binary
+// protocol.
+//
+// Connections are spread round-robin over chat.server.eventLoops reactors,
+// one per core by default, and stay on theirs for good: only that loop's
+// thread reads, writes or closes them. The first loop also accepts. Lines for
+// members on other loops are handed over through the loops' task queues by
+// ChatHub, once per loop rather than once per recipient.
+//
+// Reads go into pooled direct buffers that a connection only holds while it
+// has unprocessed bytes. Chat lines are copied out once, into pooled frames
+// every recipient queues by reference, and each loop copies queued frames
+// into one scratch buffer per write, so relaying a line allocates next to
+// nothing.
+class NioServerEngine implements ChatEngine {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final int port;
+    private final long helloTimeoutNanos;
+    private final BiConsumer<String, String> display;
+    private final ServerOptions options;
+
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isRunning = false;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+    // Linger does not apply here: frames that pile up between OP_WRITE events
+    // are already written together
+    private final WriteOptions writeOptions;
+
+    private final Reactor[] reactors;
+    private final ChatHub connections;
+    private final ServerMetrics metrics;
+    // Where the next accepted connection goes, only used by the first loop
+    private int nextReactor = 0;
+    // Accepted but not yet added to connections by their loop, so a burst of
+    // connects can't slip past maxClients
+    private final AtomicInteger registering = new AtomicInteger();
+
+    NioServerEngine(ServerOptions options, Journal journal, Cluster cluster, ServerMetrics metrics,
+                    BiConsumer<String, String> display) throws IOException {
+        this.options = options;
+        this.port = options.getPort();
+        this.helloTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.getHelloTimeoutMillis());
+        this.overflowPolicy = options.getOverflowPolicy();
+        this.queueCapacity = options.getQueueCapacity();
+        this.writeOptions = options.getWriteOptions();
+        this.display = display;
+        this.metrics = metrics;
+        this.reactors = new Reactor[Math.max(1, options.getEventLoops())];
+        try {
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new Reactor(i);
+            }
+        } catch (IOException e) {
+            for (Reactor reactor : reactors) {
+                if (reactor != null) {
+                    reactor.selector.close();
+                }
+            }
+            throw e;
+        }
+        this.connections = new ChatHub(display, journal, cluster, metrics, reactors);
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            // Before the loop runs, registering with a selector in select() would block
+            serverChannel.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            for (Reactor reactor : reactors) {
+                reactor.selector.close();
+            }
+            throw e;
+        }
+
+        isRunning = true;
+        for (Reactor reactor : reactors) {
+            reactor.start("nio-loop-" + port + "-" + reactor.index);
+        }
+    }
+
+    // On the first loop
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            int maxClients = options.getMaxClients();
+            if (maxClients > 0 && connections.size() + registering.get() >= maxClients) {
+                metrics.onRejected();
+                display.accept("System", "Rejected client " + channel.socket().getInetAddress().getHostAddress()
+                        + ": limit of " + maxClients + " reached");
+                closeQuietly(channel);
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(writeOptions.tcpNoDelay);
+            // The only way to notice a vanished legacy client, they can't answer pings
+            channel.socket().setKeepAlive(true);
+
+            Reactor reactor = reactors[nextReactor];
+            nextReactor = (nextReactor + 1) % reactors.length;
+            registering.incrementAndGet();
+            reactor.execute(() -> reactor.register(channel));
+        } catch (IOException e) {
+            if (isRunning) {
+                display.accept("System", "Error accepting client connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // Each wire format is encoded once for all clients; ChatHub hands the
+    // line to every loop
+    @Override
+    public void broadcast(String room, String message) {
+        connections.broadcastFromServer(room, message);
+    }
+
+    // Outbound queue depth per client id, safe to call from any thread
+    @Override
+    public Map<Integer, Integer> getQueueDepths() {
+        return connections.queueDepths();
+    }
+
+    @Override
+    public String describe() {
+        return "NIO engine, " + reactors.length + (reactors.length == 1 ? " event loop" : " event loops");
+    }
+
+    @Override
+    public int getClientCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            display.accept("System", "Error stopping server: " + e.getMessage());
+        }
+        for (Reactor reactor : reactors) {
+            reactor.stop();
+        }
+    }
+
+    // One event loop and the connections pinned to it
+    private final class Reactor extends EventLoop {
+        // Null when the heartbeat is off
+        private final Reaper reaper = options.newReaper(display);
+        // Connections that have not sent anything yet, oldest first
+        private final ArrayDeque<Connection> negotiating = new ArrayDeque<>();
+        // Senders un-paused by backpressure that may still hold buffered frames
+        private final Queue<Connection> resumedSenders = new ArrayDeque<>();
+        // Queued frames are gathered here for each write
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        Reactor(int index) throws IOException {
+            super(index);
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                registerNow(channel);
+            } finally {
+                registering.decrementAndGet();
+            }
+        }
+
+        private void registerNow(SocketChannel channel) {
+            if (!isRunning()) {
+                closeQuietly(channel);
+                return;
+            }
+            try {
+                Connection connection = new Connection(connections.nextId(), channel, this);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+                negotiating.add(connection);
+                if (reaper != null) {
+                    reaper.track(connection);
+                }
+                display.accept("System", "New client connected: " + connection.clientAddress);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                if (isRunning) {
+                    display.accept("System", "Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        void handle(SelectionKey key) {
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            } catch (IOException e) {
+                if (isRunning) {
+                    display.accept("System", "Lost connection to client " + connection.clientAddress + ": " + e.getMessage());
+                }
+                connection.close();
+            }
+        }
+
+        // Runs the hello timeouts and the reaper. Returns how long select() may
+        // block, 0 meaning forever.
+        @Override
+        long timeout() {
+            long timeout = expireHelloTimeouts();
+            if (reaper != null) {
+                long reap = Math.max(1, TimeUnit.NANOSECONDS.toMillis(reaper.advance(System.nanoTime())));
+                timeout = timeout == 0 ? reap : Math.min(timeout, reap);
+            }
+            return timeout;
+        }
+
+        // Clients that stay silent for the hello timeout are legacy clients. Returns
+        // how long select() may block before the next one is due, 0 meaning forever.
+        private long expireHelloTimeouts() {
+            long now = System.nanoTime();
+            Connection connection;
+            while ((connection = negotiating.peek()) != null) {
+                if (connection.isNegotiated() || !connection.isActive) {
+                    negotiating.poll();
+                } else if (now - connection.acceptedAt >= helloTimeoutNanos) {
+                    negotiating.poll();
+                    connection.onLegacyDetected();
+                } else {
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(connection.acceptedAt + helloTimeoutNanos - now));
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        void afterSelect() {
+            Connection connection;
+            while ((connection = resumedSenders.poll()) != null) {
+                if (connection.isActive && connection.pausedBy == 0) {
+                    try {
+                        connection.processFrames();
+                    } catch (IOException e) {
+                        display.accept("System", "Lost connection to client " + connection.clientAddress + ": " + e.getMessage());
+                        connection.close();
+                    } catch (RuntimeException e) {
+                        failed(connection, e);
+                    }
+                }
+            }
+        }
+
+        // Closed here so no key is touched after the selector is gone
+        @Override
+        void shutdown() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    connection.close();
+                }
+            }
+        }
+
+        @Override
+        void failed(IOException e) {
+            display.accept("System", "Server error: " + e.getMessage());
+        }
+
+        // Drops only the client whose frame tripped the bug; a failure
+        // accepting leaves the listening socket as it is
+        @Override
+        void failed(SelectionKey key, RuntimeException e) {
+            if (key.attachment() instanceof Connection connection) {
+                failed(connection, e);
+            } else {
+                display.accept("System", "Error accepting client connection: " + e);
+            }
+        }
+
+        @Override
+        void failed(Runnable task, RuntimeException e) {
+            display.accept("System", "Server error: " + e);
+        }
+
+        private void failed(Connection connection, RuntimeException e) {
+            display.accept("System", "Closing connection to client " + connection.clientAddress + " after an internal error: " + e);
+            connection.close();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Never got going
+        }
+    }
+
+    // The frames queued for one connection, in a ring that stops allocating
+    // once it has grown to the connection's usual depth
+    private static final class FrameQueue {
+        private Frame[] frames = new Frame[16];
+        private int head = 0;
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Frame get(int index) {
+            return frames[(head + index) & (frames.length - 1)];
+        }
+
+        Frame peek() {
+            return size == 0 ? null : frames[head];
+        }
+
+        void add(Frame frame) {
+            if (size == frames.length) {
+                grow();
+            }
+            frames[(head + size) & (frames.length - 1)] = frame;
+            size++;
+        }
+
+        void addFirst(Frame frame) {
+            if (size == frames.length) {
+                grow();
+            }
+            head = (head - 1) & (frames.length - 1);
+            frames[head] = frame;
+            size++;
+        }
+
+        Frame poll() {
+            if (size == 0) {
+                return null;
+            }
+            Frame frame = frames[head];
+            frames[head] = null;
+            head = (head + 1) & (frames.length - 1);
+            size--;
+            return frame;
+        }
+
+        private void grow() {
+            Frame[] bigger = new Frame[frames.length * 2];
+            for (int i = 0; i < size; i++) {
+                bigger[i] = get(i);
+            }
+            frames = bigger;
+            head = 0;
+        }
+    }
+
+    private class Connection extends ChatSession {
+        private final SocketChannel channel;
+        private final Reactor loop;
+        private final long acceptedAt = System.nanoTime();
+        // From the pool, and only while there are unprocessed bytes
+        private ByteBuffer readBuffer;
+        private boolean processing = false;
+        // Each one retained until it is written or dropped
+        private final FrameQueue outbound = new FrameQueue();
+        // How much of the head frame has gone out already
+        private long headOffset = 0;
+        // Senders whose reads we paused because our queue was full
+        private final List<Connection> blockedSenders = new ArrayList<>();
+        private SelectionKey key;
+        // Read by other threads through isOpen()
+        private volatile boolean isActive = true;
+        // Only touched on this connection's own loop
+        private int pausedBy = 0;
+        private volatile int queueDepth = 0;
+
+        Connection(int id, SocketChannel channel, Reactor loop) {
+            super(id, channel.socket().getInetAddress().getHostAddress(), loop.index, connections, queueCapacity);
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        void read() throws IOException {
+            if (readBuffer == null) {
+                readBuffer = BufferPool.allocate(READ_BUFFER_SIZE);
+            } else if (!readBuffer.hasRemaining()) {
+                // Grows for frames bigger than the buffer, up to the largest legal one
+                int capacity = Math.min(readBuffer.capacity() * 2, WireProtocol.MAX_PAYLOAD + 16);
+                ByteBuffer grown = BufferPool.allocate(capacity).put(readBuffer.flip());
+                BufferPool.release(readBuffer);
+                readBuffer = grown;
+            }
+            int count = channel.read(readBuffer);
+            if (count == -1) {
+                display.accept("System", "Client " + clientAddress + " has disconnected");
+                close();
+                return;
+            }
+            metrics.onBytesIn(count);
+            // A big frame can take longer than the heartbeat timeout to arrive
+            markReceived();
+            processFrames();
+        }
+
+        private void processFrames() throws IOException {
+            if (readBuffer == null) {
+                return;
+            }
+            readBuffer.flip();
+            processing = true;
+            try {
+                while (isActive && pausedBy == 0) {
+                    if (!isNegotiated()) {
+                        if (!WireProtocol.startsWithHello(readBuffer)) {
+                            if (readBuffer.remaining() < 2) {
+                                break;
+                            }
+                            onLegacyDetected();
+                        } else {
+                            int version = WireProtocol.readHello(readBuffer);
+                            if (version == -1) {
+                                break;
+                            }
+                            onHello(version);
+                        }
+                    }
+
+                    boolean keepOpen;
+                    if (isBinary()) {
+                        int frameSize = WireProtocol.completeFrameSize(readBuffer);
+                        if (frameSize == -1) {
+                            break;
+                        }
+                        keepOpen = onFrame(readBuffer, frameSize);
+                    } else {
+                        int frameSize = UtfFrames.completeFrameSize(readBuffer);
+                        if (frameSize == -1) {
+                            break;
+                        }
+                        // Keep the received bytes so legacy peers get them untouched
+                        keepOpen = onLegacyMessage(Frame.copyOf(readBuffer, frameSize));
+                    }
+                    if (!keepOpen) {
+                        close();
+                    }
+                }
+            } finally {
+                processing = false;
+                readBuffer.compact();
+                if (!isActive || readBuffer.position() == 0) {
+                    releaseReadBuffer();
+                }
+            }
+        }
+
+        private void releaseReadBuffer() {
+            if (readBuffer != null) {
+                BufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+        }
+
+        // Safe from any thread, others hand the frame to our loop
+        @Override
+        void sendFrame(Frame frame, ChatSession from) {
+            if (loop.inLoop()) {
+                enqueue(frame, (Connection) from);
+            } else {
+                frame.retain();
+                loop.execute(() -> {
+                    try {
+                        enqueue(frame, (Connection) from);
+                    } finally {
+                        frame.release();
+                    }
+                });
+            }
+        }
+
+        private void enqueue(Frame frame, Connection sender) {
+            if (!isActive) {
+                return;
+            }
+
+            if (outbound.size() >= queueCapacity) {
+                switch (overflowPolicy) {
+                    case DISCONNECT:
+                        display.accept("System", "Client " + clientAddress + " is not keeping up, disconnecting");
+                        close();
+                        return;
+                    case BACKPRESSURE:
+                        if (sender == null) {
+                            // Server lines, peer relays and history have nobody
+                            // to hold back, so they make room instead
+                            dropOldest();
+                        } else if (!blockedSenders.contains(sender)) {
+                            // Queue past the limit but stop reading from the sender
+                            // until this client has drained
+                            blockedSenders.add(sender);
+                            sender.pause();
+                        }
+                        break;
+                    case DROP_OLDEST:
+                    default:
+                        dropOldest();
+                        break;
+                }
+            }
+
+            outbound.add(frame.retain());
+            queueDepth = outbound.size();
+            updateInterest();
+        }
+
+        private void dropOldest() {
+            // The head may be partially written already, so drop the one behind it
+            Frame head = outbound.poll();
+            if (head != null && headOffset > 0) {
+                Frame dropped = outbound.poll();
+                if (dropped != null) {
+                    dropped.release();
+                }
+                outbound.addFirst(head);
+            } else if (head != null) {
+                head.release();
+            }
+        }
+
+        void flush() throws IOException {
+            while (!outbound.isEmpty()) {
+                Frame head = outbound.peek();
+                if (head.isFileRegion()) {
+                    long started = System.nanoTime();
+                    long sent = head.transferTo(channel, headOffset);
+                    headOffset += sent;
+                    boolean done = headOffset >= head.size();
+                    metrics.onWritten(done ? 1 : 0, sent, System.nanoTime() - started);
+                    if (!done) {
+                        // Socket send buffer is full, wait for the next OP_WRITE
+                        break;
+                    }
+                    outbound.poll();
+                    headOffset = 0;
+                    continue;
+                }
+
+                // One write for up to maxBatch queued frames, up to the next
+                // file region or as much as the loop's write buffer holds
+                ByteBuffer buffer = loop.writeBuffer.clear();
+                int pos = 0;
+                for (int i = 0; i < outbound.size() && i < writeOptions.maxBatch && pos < buffer.capacity(); i++) {
+                    Frame frame = outbound.get(i);
+                    if (frame.isFileRegion()) {
+                        break;
+                    }
+                    int offset = i == 0 ? (int) headOffset : 0;
+                    int length = Math.min(frame.size() - offset, buffer.capacity() - pos);
+                    frame.copyTo(buffer, pos, offset, length);
+                    pos += length;
+                }
+                buffer.limit(pos);
+                long started = System.nanoTime();
+                int written = channel.write(buffer);
+                long writeNanos = System.nanoTime() - started;
+
+                int completed = 0;
+                long left = written;
+                while (!outbound.isEmpty() && !outbound.peek().isFileRegion()) {
+                    Frame done = outbound.peek();
+                    long rest = done.size() - headOffset;
+                    if (left < rest) {
+                        headOffset += left;
+                        break;
+                    }
+                    left -= rest;
+                    outbound.poll().release();
+                    headOffset = 0;
+                    completed++;
+                }
+                metrics.onWritten(completed, written, writeNanos);
+                if (written < pos) {
+                    // Socket send buffer is full, wait for the next OP_WRITE
+                    break;
+                }
+            }
+            queueDepth = outbound.size();
+
+            if (!blockedSenders.isEmpty() && outbound.size() <= queueCapacity / 2) {
+                releaseBlockedSenders();
+            }
+            updateInterest();
+        }
+
+        private void releaseBlockedSenders() {
+            for (Connection sender : blockedSenders) {
+                sender.resume();
+            }
+            blockedSenders.clear();
+        }
+
+        // Stops reading from this sender until every recipient it filled up
+        // has drained. Called by those recipients, maybe from other loops.
+        private void pause() {
+            if (!loop.inLoop()) {
+                loop.execute(this::pause);
+                return;
+            }
+            pausedBy++;
+            updateInterest();
+        }
+
+        private void resume() {
+            if (!loop.inLoop()) {
+                loop.execute(this::resume);
+                return;
+            }
+            pausedBy--;
+            if (isActive && pausedBy == 0) {
+                updateInterest();
+                // Frames may have been buffered while paused
+                loop.resumedSenders.add(this);
+            }
+        }
+
+        private void updateInterest() {
+            if (!isActive || !key.isValid()) {
+                return;
+            }
+            int ops = pausedBy == 0 ? SelectionKey.OP_READ : 0;
+            if (!outbound.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        @Override
+        int getQueueDepth() {
+            return queueDepth;
+        }
+
+        @Override
+        boolean isOpen() {
+            return isActive;
+        }
+
+        // Safe from any thread, the close itself happens on our loop
+        @Override
+        void close() {
+            if (!loop.inLoop()) {
+                loop.execute(this::close);
+                return;
+            }
+            if (!isActive) {
+                return;
+            }
+            isActive = false;
+            connections.remove(this);
+            Frame frame;
+            while ((frame = outbound.poll()) != null) {
+                frame.release();
+            }
+            headOffset = 0;
+            queueDepth = 0;
+            if (!processing) {
+                releaseReadBuffer();
+            }
+            releaseBlockedSenders();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                display.accept("System", "Error closing client connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded per-client queue between broadcasting threads and the client's
+// writer. Senders only ever touch the queue, so a stalled socket can no
+// longer hold up delivery to everybody else.
+final class OutboundQueue<E> {
+    static final int DEFAULT_CAPACITY = Integer.getInteger("chat.server.queueCapacity", 1024);
+
+    private final ArrayBlockingQueue<E> queue;
+    private final OverflowPolicy policy;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean closed = false;
+
+    OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+    }
+
+    // Returns false when the client should be disconnected
+    boolean offer(E item) {
+        if (closed) {
+            return false;
+        }
+
+        switch (policy) {
+            case DISCONNECT:
+                return queue.offer(item);
+
+            case BACKPRESSURE:
+                try {
+                    // Wake up periodically so a sender can't outlive a closed queue
+                    while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        if (closed) {
+                            return false;
+                        }
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    // Nothing was queued, so the client would silently miss it
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+            case DROP_OLDEST:
+            default:
+                while (!queue.offer(item)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                return true;
+        }
+    }
+
+    // Queues only if there is room right now, whatever the policy. Returns
+    // false when there isn't.
+    boolean offerNow(E item) {
+        return !closed && queue.offer(item);
+    }
+
+    E take() throws InterruptedException {
+        return queue.take();
+    }
+
+    E poll() {
+        return queue.poll();
+    }
+
+    E poll(long timeoutNanos) throws InterruptedException {
+        return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    int capacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.clientsevermsgexample;
+
+// What to do when a client's outbound queue is full.
+public enum OverflowPolicy {
+    // Discard the oldest queued message to make room
+    DROP_OLDEST,
+    // Treat the client as too slow and drop the connection
+    DISCONNECT,
+    // Hold the sender until the client catches up
+    BACKPRESSURE;
+
+    public static OverflowPolicy fromSystemProperty() {
+        String value = System.getProperty("chat.server.overflow", "drop_oldest");
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DROP_OLDEST;
+        }
+    }
+}
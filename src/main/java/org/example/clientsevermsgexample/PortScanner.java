@@ -0,0 +1,184 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Checks which host/port pairs accept TCP connections. Every probe is a
+// non-blocking connect on one selector thread, so a scan takes about as long
+// as its slowest probe rather than the sum of them, and the caller is never
+// blocked. Results are reported one by one as they come in; connections that
+// succeed are closed again straight away.
+final class PortScanner {
+    // Probes in flight at once, the rest wait their turn
+    private static final int MAX_IN_FLIGHT = 256;
+
+    enum Status {
+        OPEN,
+        // Actively refused
+        CLOSED,
+        TIMED_OUT,
+        UNKNOWN_HOST,
+        ERROR
+    }
+
+    // latencyNanos is the time to the answer, 0 when there was none; detail
+    // is the error message for ERROR and UNKNOWN_HOST (port is 0 for those)
+    record Result(String host, int port, Status status, long latencyNanos, String detail) {
+        double latencyMillis() {
+            return latencyNanos / 1_000_000.0;
+        }
+    }
+
+    private record Probe(String host, int port, SocketChannel channel, long started, long deadline) {
+    }
+
+    private final List<String> hosts;
+    private final List<Integer> ports;
+    private final long timeoutNanos;
+    private final Consumer<Result> onResult;
+
+    private PortScanner(List<String> hosts, List<Integer> ports, long timeoutMillis, Consumer<Result> onResult) {
+        this.hosts = hosts;
+        this.ports = ports;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.onResult = onResult;
+    }
+
+    // Scans every port of every host on a background thread. onResult and
+    // then onDone are called on that thread.
+    static Thread scan(List<String> hosts, List<Integer> ports, long timeoutMillis,
+                       Consumer<Result> onResult, Runnable onDone) {
+        PortScanner scanner = new PortScanner(List.copyOf(hosts), List.copyOf(ports), timeoutMillis, onResult);
+        Thread thread = new Thread(() -> {
+            try {
+                scanner.run();
+            } finally {
+                onDone.run();
+            }
+        }, "port-scanner");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void run() {
+        // Name lookups block, which is fine on this thread
+        ArrayDeque<InetSocketAddress> targets = new ArrayDeque<>();
+        for (String host : hosts) {
+            try {
+                InetAddress address = InetAddress.getByName(host);
+                for (int port : ports) {
+                    targets.add(new InetSocketAddress(address, port));
+                }
+            } catch (UnknownHostException e) {
+                onResult.accept(new Result(host, 0, Status.UNKNOWN_HOST, 0, e.getMessage()));
+            }
+        }
+
+        try (Selector selector = Selector.open()) {
+            List<Probe> inFlight = new ArrayList<>();
+            while (!targets.isEmpty() || !inFlight.isEmpty()) {
+                while (!targets.isEmpty() && inFlight.size() < MAX_IN_FLIGHT) {
+                    start(selector, targets.poll(), inFlight);
+                }
+                if (inFlight.isEmpty()) {
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                long nextDeadline = Long.MAX_VALUE;
+                for (Probe probe : inFlight) {
+                    nextDeadline = Math.min(nextDeadline, probe.deadline());
+                }
+                // Rounded up, so a deadline under a millisecond away doesn't spin
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(nextDeadline - now + 999_999);
+                if (waitMillis > 0) {
+                    selector.select(waitMillis);
+                } else {
+                    selector.selectNow();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Probe probe = (Probe) key.attachment();
+                    inFlight.remove(probe);
+                    finish(probe);
+                }
+
+                now = System.nanoTime();
+                Iterator<Probe> pending = inFlight.iterator();
+                while (pending.hasNext()) {
+                    Probe probe = pending.next();
+                    if (now - probe.deadline() >= 0) {
+                        pending.remove();
+                        close(probe.channel());
+                        onResult.accept(new Result(probe.host(), probe.port(), Status.TIMED_OUT, 0, null));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            onResult.accept(new Result(String.join(", ", hosts), 0, Status.ERROR, 0, e.getMessage()));
+        }
+    }
+
+    private void start(Selector selector, InetSocketAddress target, List<Probe> inFlight) {
+        String host = target.getHostString();
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            long started = System.nanoTime();
+            Probe probe = new Probe(host, target.getPort(), channel, started, started + timeoutNanos);
+            if (channel.connect(target)) {
+                report(probe, Status.OPEN, null);
+                return;
+            }
+            channel.register(selector, SelectionKey.OP_CONNECT, probe);
+            inFlight.add(probe);
+        } catch (IOException e) {
+            close(channel);
+            onResult.accept(new Result(host, target.getPort(), Status.ERROR, 0, e.getMessage()));
+        }
+    }
+
+    private void finish(Probe probe) {
+        try {
+            probe.channel().finishConnect();
+            report(probe, Status.OPEN, null);
+        } catch (ConnectException e) {
+            report(probe, Status.CLOSED, null);
+        } catch (IOException e) {
+            report(probe, Status.ERROR, e.getMessage());
+        }
+    }
+
+    private void report(Probe probe, Status status, String detail) {
+        long latency = System.nanoTime() - probe.started();
+        close(probe.channel());
+        onResult.accept(new Result(probe.host(), probe.port(), status, latency, detail));
+    }
+
+    private static void close(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to clean up
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// Pings binary clients that have gone quiet and disconnects the ones that
+// stay silent, all from a single timer wheel. Legacy clients can't answer a
+// PING, so the engines turn on TCP keepalive for their sockets instead.
+//
+// advance() has to run on a thread that may close sessions and send to them:
+// the selector thread for NIO, a dedicated loop for the blocking engine.
+final class Reaper {
+    private static final int WHEEL_SIZE = 512;
+
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final BiConsumer<String, String> display;
+    private final TimerWheel<ChatSession> wheel;
+
+    Reaper(long intervalMillis, long timeoutMillis, BiConsumer<String, String> display) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, intervalMillis));
+        this.display = display;
+        // A quarter of the interval is plenty of precision for a timeout
+        this.wheel = new TimerWheel<>(Math.max(TimeUnit.MILLISECONDS.toNanos(10), intervalNanos / 4), WHEEL_SIZE, this::check);
+    }
+
+    void track(ChatSession session) {
+        wheel.add(session, System.nanoTime() + intervalNanos);
+    }
+
+    // Returns the nanos until it should be called again
+    long advance(long now) {
+        return wheel.advance(now);
+    }
+
+    private long check(ChatSession session, long now) {
+        if (!session.isOpen()) {
+            return 0;
+        }
+        if (!session.isNegotiated()) {
+            return now + intervalNanos;
+        }
+        if (!session.isBinary()) {
+            return 0;
+        }
+
+        long lastReceived = session.lastReceived();
+        long quiet = now - lastReceived;
+        if (quiet >= timeoutNanos) {
+            display.accept("System", "Client " + session.clientAddress + " stopped responding, disconnecting");
+            session.close();
+            return 0;
+        }
+        if (quiet >= intervalNanos) {
+            // Any frame counts as an answer, a PONG is just the smallest
+            session.sendControl(WireProtocol.control(WireProtocol.PING, WireProtocol.SERVER_ID));
+            return Math.min(now + intervalNanos, lastReceived + timeoutNanos);
+        }
+        return lastReceived + intervalNanos;
+    }
+}
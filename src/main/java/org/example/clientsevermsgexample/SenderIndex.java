@@ -0,0 +1,130 @@
+package org.example.clientsevermsgexample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Which lines of one journal segment each sender wrote. While the segment is
+// appended to this is a map in memory. Once the segment is sealed the entries
+// go to <base>.snd as sorted longs, (hash of the name << 32) | line, which
+// are binary searched in place; names that share a hash are told apart by
+// the caller.
+final class SenderIndex {
+    private static final int ENTRY_SIZE = 8;
+
+    private static final class Lines {
+        int[] lines = new int[8];
+        int size = 0;
+
+        void add(int line) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+    }
+
+    private Map<String, Lines> bySender = new HashMap<>();
+    private MappedByteBuffer sealed;
+
+    private SenderIndex() {
+    }
+
+    static SenderIndex inMemory() {
+        return new SenderIndex();
+    }
+
+    // Null if the file is missing or doesn't cover exactly count lines
+    static SenderIndex load(Path file, int count) throws IOException {
+        if (!Files.exists(file) || Files.size(file) != (long) count * ENTRY_SIZE) {
+            return null;
+        }
+        SenderIndex index = new SenderIndex();
+        index.bySender = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.sealed = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return index;
+    }
+
+    // Lines must be added in order
+    void add(String sender, int line) {
+        bySender.computeIfAbsent(sender, name -> new Lines()).add(line);
+    }
+
+    // Writes the sorted entries to file and switches to reading them from there
+    void seal(Path file) throws IOException {
+        int count = 0;
+        for (Lines lines : bySender.values()) {
+            count += lines.size;
+        }
+        long[] keys = new long[count];
+        int i = 0;
+        for (Map.Entry<String, Lines> entry : bySender.entrySet()) {
+            int hash = entry.getKey().hashCode();
+            Lines lines = entry.getValue();
+            for (int j = 0; j < lines.size; j++) {
+                keys[i++] = key(hash, lines.lines[j]);
+            }
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer bytes = ByteBuffer.allocate(count * ENTRY_SIZE);
+        bytes.asLongBuffer().put(keys);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            sealed = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        bySender = null;
+    }
+
+    // The first line at or after from that sender may have written, -1 if
+    // there is none. Once sealed, a line by another sender whose name has
+    // the same hash can come back too.
+    int nextLine(String sender, int from) {
+        if (bySender != null) {
+            Lines lines = bySender.get(sender);
+            if (lines == null) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(lines.lines, 0, lines.size, from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < lines.size ? lines.lines[i] : -1;
+        }
+
+        int hash = sender.hashCode();
+        long target = key(hash, from);
+        int low = 0;
+        int high = sealed.capacity() / ENTRY_SIZE;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sealed.getLong(mid * ENTRY_SIZE) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low * ENTRY_SIZE >= sealed.capacity()) {
+            return -1;
+        }
+        long found = sealed.getLong(low * ENTRY_SIZE);
+        return (int) (found >> 32) == hash ? (int) found : -1;
+    }
+
+    private static long key(int hash, int line) {
+        return ((long) hash << 32) | (line & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.clientsevermsgexample;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Sender id to name mapping shared by everything that handles frames on one
+// side of the connection. Names are interned, so every frame from a sender
+// resolves to the same String instance, and lookups are a plain array read
+// with no boxing or locking. Only join and leave take the lock.
+final class SenderTable {
+    private volatile String[] names = new String[16];
+    // Canonical instance of each name in use, with the number of ids using it
+    private final Map<String, String> canonical = new HashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+
+    SenderTable() {
+        put(WireProtocol.SERVER_ID, WireProtocol.SERVER_NAME);
+    }
+
+    String get(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    String getOrDefault(int id, String fallback) {
+        String name = get(id);
+        return name != null ? name : fallback;
+    }
+
+    // Returns the interned name now mapped to the id
+    synchronized String put(int id, String name) {
+        String previous = get(id);
+        if (name.equals(previous)) {
+            return previous;
+        }
+        if (previous != null) {
+            release(previous);
+        }
+
+        String interned = canonical.putIfAbsent(name, name);
+        if (interned == null) {
+            interned = name;
+        }
+        refCounts.merge(interned, 1, Integer::sum);
+
+        String[] current = names;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+        }
+        current[id] = interned;
+        // Volatile write publishes the slot to lock-free readers
+        names = current;
+        return interned;
+    }
+
+    synchronized String remove(int id) {
+        String name = get(id);
+        if (name == null) {
+            return null;
+        }
+        String[] current = names;
+        current[id] = null;
+        names = current;
+        release(name);
+        return name;
+    }
+
+    private void release(String name) {
+        if (refCounts.merge(name, -1, Integer::sum) == 0) {
+            refCounts.remove(name);
+            canonical.remove(name);
+        }
+    }
+}
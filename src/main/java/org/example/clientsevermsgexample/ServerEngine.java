@@ -0,0 +1,19 @@
+package org.example.clientsevermsgexample;
+
+// Selects how ServerView services client sockets.
+public enum ServerEngine {
+    // One thread per client, blocking DataInputStream.readUTF()
+    BLOCKING,
+    // Non-blocking channels sharded across event loops, one per core by
+    // default (chat.server.eventLoops), each with its own selector
+    NIO;
+
+    public static ServerEngine fromSystemProperty() {
+        String value = System.getProperty("chat.server.engine", "blocking");
+        try {
+            return ServerEngine.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return BLOCKING;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.clientsevermsgexample;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and timings recorded on the server's hot paths. Counters are
+// LongAdders, striped per thread, and timings go into LatencyHistograms, so
+// recording never takes a lock or allocates. Read by MetricsEndpoint.
+final class ServerMetrics {
+    // Rates are averaged over at least this long
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    // Time to hand one line to every recipient's queue
+    private final LatencyHistogram fanOut = new LatencyHistogram();
+    // Time spent in socket writes and flushes
+    private final LatencyHistogram writes = new LatencyHistogram();
+
+    private final long[] windowStartCounts = new long[4];
+    private long windowStart = System.nanoTime();
+    private Rates rates = new Rates(0, 0, 0, 0);
+
+    record Rates(double messagesIn, double bytesIn, double messagesOut, double bytesOut) {
+    }
+
+    void onAccepted() {
+        accepted.increment();
+    }
+
+    void onClosed() {
+        closed.increment();
+    }
+
+    void onRejected() {
+        rejected.increment();
+    }
+
+    void onMessageIn() {
+        messagesIn.increment();
+    }
+
+    void onBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    void onWritten(int messages, long bytes, long nanos) {
+        messagesOut.add(messages);
+        bytesOut.add(bytes);
+        writes.record(nanos);
+    }
+
+    void onFanOut(long nanos) {
+        fanOut.record(nanos);
+    }
+
+    long acceptedCount() {
+        return accepted.sum();
+    }
+
+    long closedCount() {
+        return closed.sum();
+    }
+
+    long rejectedCount() {
+        return rejected.sum();
+    }
+
+    long messagesInCount() {
+        return messagesIn.sum();
+    }
+
+    long bytesInCount() {
+        return bytesIn.sum();
+    }
+
+    long messagesOutCount() {
+        return messagesOut.sum();
+    }
+
+    long bytesOutCount() {
+        return bytesOut.sum();
+    }
+
+    LatencyHistogram fanOutTimes() {
+        return fanOut;
+    }
+
+    LatencyHistogram writeTimes() {
+        return writes;
+    }
+
+    // Per second over the last window of at least a second, which readers
+    // roll over as they ask, so there is no timer thread
+    synchronized Rates rates() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            long[] counts = {messagesIn.sum(), bytesIn.sum(), messagesOut.sum(), bytesOut.sum()};
+            double seconds = elapsed / 1e9;
+            rates = new Rates((counts[0] - windowStartCounts[0]) / seconds, (counts[1] - windowStartCounts[1]) / seconds,
+                    (counts[2] - windowStartCounts[2]) / seconds, (counts[3] - windowStartCounts[3]) / seconds);
+            System.arraycopy(counts, 0, windowStartCounts, 0, counts.length);
+            windowStart = now;
+        }
+        return rates;
+    }
+
+    void resetTimings() {
+        fanOut.reset();
+        writes.reset();
+    }
+
+    // Counts what a blocking engine reads from a socket
+    InputStream meter(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesIn.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) {
+                    bytesIn.add(count);
+                }
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.clientsevermsgexample;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Settings for a ChatServer. Every default can be overridden with the system
+// property named next to it, so the same options work for the FX window and
+// the headless daemon.
+public class ServerOptions {
+    private int port = 6666;
+    private ServerEngine engine = ServerEngine.fromSystemProperty();
+    private ThreadMode threadMode = ThreadMode.fromSystemProperty();
+    // chat.server.eventLoops, for the NIO engine
+    private int eventLoops = Integer.getInteger("chat.server.eventLoops", Runtime.getRuntime().availableProcessors());
+    // chat.server.maxClients, 0 means unbounded
+    private int maxClients = Integer.getInteger("chat.server.maxClients", 0);
+    private OverflowPolicy overflowPolicy = OverflowPolicy.fromSystemProperty();
+    private int queueCapacity = OutboundQueue.DEFAULT_CAPACITY;
+    private WriteOptions writeOptions = WriteOptions.fromSystemProperties();
+    private int helloTimeoutMillis = Integer.getInteger("chat.server.helloTimeoutMillis", 1000);
+    private JournalOptions journalOptions = JournalOptions.fromSystemProperties();
+    // Without chat.journal.dir every server journals to chat-journal-<port>,
+    // so the servers of a cluster started from one directory each get their own
+    private boolean journalPerPort = System.getProperty("chat.journal.dir") == null;
+    // chat.heartbeat.intervalMillis, 0 turns pings and the idle reaper off
+    private long heartbeatIntervalMillis = Long.getLong("chat.heartbeat.intervalMillis", 15000);
+    private long heartbeatTimeoutMillis = Long.getLong("chat.heartbeat.timeoutMillis", 45000);
+    // chat.cluster.peers as "host:port,host:port", empty runs a standalone server
+    private List<InetSocketAddress> peers = Cluster.parsePeers(System.getProperty("chat.cluster.peers", ""));
+    // chat.metrics.port for the loopback-only /metrics page, 0 serves none
+    private int metricsPort = Integer.getInteger("chat.metrics.port", 0);
+    // chat.metrics.jmx
+    private boolean metricsJmx = Boolean.parseBoolean(System.getProperty("chat.metrics.jmx", "true"));
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerOptions setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public ServerEngine getEngine() {
+        return engine;
+    }
+
+    public ServerOptions setEngine(ServerEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public ServerOptions setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode;
+        return this;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    // Each NIO connection is pinned to one of this many selector threads
+    public ServerOptions setEventLoops(int eventLoops) {
+        this.eventLoops = eventLoops;
+        return this;
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public ServerOptions setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public ServerOptions setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public ServerOptions setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public ServerOptions setWriteBatching(int maxBatch, long lingerMillis, boolean tcpNoDelay) {
+        this.writeOptions = new WriteOptions(maxBatch, lingerMillis, tcpNoDelay);
+        return this;
+    }
+
+    WriteOptions getWriteOptions() {
+        return writeOptions;
+    }
+
+    // chat.journal.dir, null keeps no journal and replays nothing
+    public ServerOptions setJournalDir(Path dir) {
+        this.journalOptions = journalOptions.withDir(dir);
+        this.journalPerPort = false;
+        return this;
+    }
+
+    // chat.journal.replayMessages and chat.journal.replaySeconds: new clients
+    // get up to this many of the latest lines, none older than maxAgeSeconds
+    // unless that is 0
+    public ServerOptions setReplay(int messages, long maxAgeSeconds) {
+        this.journalOptions = journalOptions.withReplay(messages, maxAgeSeconds * 1000);
+        return this;
+    }
+
+    JournalOptions getJournalOptions() {
+        return journalPerPort ? journalOptions.withDir(Path.of("chat-journal-" + port)) : journalOptions;
+    }
+
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    public long getHeartbeatTimeoutMillis() {
+        return heartbeatTimeoutMillis;
+    }
+
+    // Binary clients quiet for intervalMillis are pinged and disconnected once
+    // they have been silent for timeoutMillis
+    public ServerOptions setHeartbeat(long intervalMillis, long timeoutMillis) {
+        this.heartbeatIntervalMillis = intervalMillis;
+        this.heartbeatTimeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    // Null when the heartbeat is off
+    Reaper newReaper(BiConsumer<String, String> display) {
+        return heartbeatIntervalMillis > 0 ? new Reaper(heartbeatIntervalMillis, heartbeatTimeoutMillis, display) : null;
+    }
+
+    public List<InetSocketAddress> getPeers() {
+        return peers;
+    }
+
+    // The other servers of the cluster, each of which should list this one back
+    public ServerOptions setPeers(List<InetSocketAddress> peers) {
+        this.peers = List.copyOf(peers);
+        return this;
+    }
+
+    // Null for a standalone server
+    Cluster newCluster(BiConsumer<String, String> display) {
+        return peers.isEmpty() ? null : new Cluster(peers, writeOptions, display);
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public ServerOptions setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    public boolean isMetricsJmx() {
+        return metricsJmx;
+    }
+
+    public ServerOptions setMetricsJmx(boolean metricsJmx) {
+        this.metricsJmx = metricsJmx;
+        return this;
+    }
+
+    public int getHelloTimeoutMillis() {
+        return helloTimeoutMillis;
+    }
+
+    public ServerOptions setHelloTimeoutMillis(int helloTimeoutMillis) {
+        this.helloTimeoutMillis = helloTimeoutMillis;
+        return this;
+    }
+}
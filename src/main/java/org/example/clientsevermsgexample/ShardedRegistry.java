@@ -0,0 +1,46 @@
+package org.example.clientsevermsgexample;
+
+// A set of sessions split by the event loop each one is pinned to, so a
+// broadcast can hand every loop just its own recipients. Each part is a
+// ClientRegistry, with its cached snapshot.
+final class ShardedRegistry {
+    private final ClientRegistry<ChatSession>[] shards;
+
+    @SuppressWarnings("unchecked")
+    ShardedRegistry(int shards) {
+        this.shards = (ClientRegistry<ChatSession>[]) new ClientRegistry<?>[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new ClientRegistry<>(ChatSession[]::new);
+        }
+    }
+
+    void add(ChatSession session) {
+        shards[session.shard].add(session.id, session);
+    }
+
+    boolean remove(ChatSession session) {
+        return shards[session.shard].remove(session.id);
+    }
+
+    int shards() {
+        return shards.length;
+    }
+
+    ChatSession[] snapshot(int shard) {
+        return shards[shard].snapshot();
+    }
+
+    int size() {
+        int size = 0;
+        for (ClientRegistry<ChatSession> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        for (ClientRegistry<ChatSession> shard : shards) {
+            shard.clear();
+        }
+    }
+}
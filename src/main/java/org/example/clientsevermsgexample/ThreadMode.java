@@ -0,0 +1,31 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Selects which kind of thread runs the accept loop and the client handlers
+// of the blocking server engine.
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static ThreadMode fromSystemProperty() {
+        String value = System.getProperty("chat.server.threads", "platform");
+        try {
+            return ThreadMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return PLATFORM;
+        }
+    }
+
+    ExecutorService newExecutor(String namePrefix) {
+        ThreadFactory factory;
+        if (this == VIRTUAL) {
+            factory = Thread.ofVirtual().name(namePrefix + "-", 0).factory();
+            return Executors.newThreadPerTaskExecutor(factory);
+        }
+        factory = Thread.ofPlatform().name(namePrefix + "-", 0).factory();
+        return Executors.newCachedThreadPool(factory);
+    }
+}
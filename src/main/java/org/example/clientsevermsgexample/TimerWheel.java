@@ -0,0 +1,82 @@
+package org.example.clientsevermsgexample;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// A hashed timing wheel. Deadlines are filed into one of a fixed number of
+// buckets by tick, and advance() only visits the buckets whose tick has come,
+// so scheduling is O(1) and thousands of deadlines share one thread instead
+// of a timer each. Items a lap or more away stay in their bucket until their
+// lap comes round.
+//
+// add() may be called from any thread; advance() only from one.
+final class TimerWheel<T> {
+    interface Expiry<T> {
+        // Called once the item's deadline has passed. Returns its next
+        // deadline, in System.nanoTime() terms, or 0 to forget it.
+        long expired(T item, long now);
+    }
+
+    private record Entry<T>(T item, long deadline) {
+    }
+
+    private final long tickNanos;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    private final int mask;
+    private final Queue<Entry<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final Expiry<T> expiry;
+    private final long start = System.nanoTime();
+    // The next tick to process
+    private long currentTick = 0;
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickNanos, int size, Expiry<T> expiry) {
+        this.tickNanos = Math.max(1, tickNanos);
+        // A power of two, so the bucket is a mask away
+        int buckets = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.buckets = (ArrayDeque<Entry<T>>[]) new ArrayDeque<?>[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+        this.mask = buckets - 1;
+        this.expiry = expiry;
+    }
+
+    void add(T item, long deadline) {
+        incoming.add(new Entry<>(item, deadline));
+    }
+
+    // Expires everything due by now. Returns the nanos until the next tick.
+    long advance(long now) {
+        Entry<T> entry;
+        while ((entry = incoming.poll()) != null) {
+            file(entry, currentTick);
+        }
+
+        long dueTick = (now - start) / tickNanos;
+        while (currentTick <= dueTick) {
+            ArrayDeque<Entry<T>> bucket = buckets[(int) (currentTick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                entry = bucket.poll();
+                if (entry.deadline() - now > 0) {
+                    // Due on a later lap
+                    bucket.add(entry);
+                    continue;
+                }
+                long next = expiry.expired(entry.item(), now);
+                if (next != 0) {
+                    file(new Entry<>(entry.item(), next), currentTick + 1);
+                }
+            }
+            currentTick++;
+        }
+        return start + currentTick * tickNanos - now;
+    }
+
+    private void file(Entry<T> entry, long earliestTick) {
+        // Rounded up so an entry is never looked at before its deadline's tick
+        long tick = Math.max(earliestTick, Math.floorDiv(entry.deadline() - start + tickNanos - 1, tickNanos));
+        buckets[(int) (tick & mask)].add(entry);
+    }
+}
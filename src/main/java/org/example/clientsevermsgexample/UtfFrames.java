@@ -0,0 +1,166 @@
+package org.example.clientsevermsgexample;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+// Encodes and decodes the DataOutputStream.writeUTF() framing: a two byte
+// big-endian length followed by modified UTF-8, so ByteBuffer based code can
+// talk to DataInputStream/DataOutputStream peers.
+final class UtfFrames {
+    static final int HEADER_SIZE = 2;
+    static final int MAX_BODY_SIZE = 65535;
+    static final String SEPARATOR = ": ";
+
+    private UtfFrames() {
+    }
+
+    static byte[] encode(String message) throws UTFDataFormatException {
+        int length = encodedLength(message);
+        byte[] frame = newFrame(length);
+        encodeInto(message, frame, HEADER_SIZE);
+        return frame;
+    }
+
+    // Encodes "sender: content" as a single frame without concatenating first
+    static byte[] encode(String sender, String content) throws UTFDataFormatException {
+        int length = encodedLength(sender) + SEPARATOR.length() + encodedLength(content);
+        byte[] frame = newFrame(length);
+        int pos = encodeInto(sender, frame, HEADER_SIZE);
+        pos = encodeInto(SEPARATOR, frame, pos);
+        encodeInto(content, frame, pos);
+        return frame;
+    }
+
+    // The frame for "sender: text" built straight from the UTF-8 text in
+    // source, or null when that isn't also valid modified UTF-8: a NUL or a
+    // character outside the BMP in the sender, anything readUTF() would
+    // reject in the text, or a frame that would be too long
+    static Frame fromUtf8(String sender, byte[] senderBytes, Frame source, int textStart, int textLength) {
+        int length = senderBytes.length + SEPARATOR.length() + textLength;
+        if (length > MAX_BODY_SIZE || encodedLength(sender) != senderBytes.length
+                || !isModifiedUtf8(source, textStart, textLength)) {
+            return null;
+        }
+        ByteBuffer bytes = BufferPool.allocate(HEADER_SIZE + length);
+        bytes.putShort(0, (short) length).put(HEADER_SIZE, senderBytes);
+        int pos = HEADER_SIZE + senderBytes.length;
+        bytes.put(pos, (byte) ':').put(pos + 1, (byte) ' ');
+        source.copyTo(bytes, pos + SEPARATOR.length(), textStart, textLength);
+        return Frame.pooled(bytes, HEADER_SIZE + length);
+    }
+
+    // NUL bytes decode the same either way and are let through
+    private static boolean isModifiedUtf8(Frame frame, int start, int length) {
+        int end = start + length;
+        int pos = start;
+        while (pos < end) {
+            int b = frame.get(pos) & 0xFF;
+            int continuation = b < 0x80 ? 0 : (b & 0xE0) == 0xC0 ? 1 : (b & 0xF0) == 0xE0 ? 2 : -1;
+            if (continuation == -1 || end - pos <= continuation) {
+                return false;
+            }
+            for (int i = 1; i <= continuation; i++) {
+                if ((frame.get(pos + i) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            pos += continuation + 1;
+        }
+        return true;
+    }
+
+    private static byte[] newFrame(int length) throws UTFDataFormatException {
+        if (length > MAX_BODY_SIZE) {
+            throw new UTFDataFormatException("Encoded string too long: " + length + " bytes");
+        }
+        byte[] frame = new byte[HEADER_SIZE + length];
+        frame[0] = (byte) (length >>> 8);
+        frame[1] = (byte) length;
+        return frame;
+    }
+
+    private static int encodeInto(String s, byte[] frame, int pos) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                frame[pos++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                frame[pos++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                frame[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                frame[pos++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                frame[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                frame[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    static int encodedLength(String message) {
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // Returns the full frame size (header included) if the buffer holds a
+    // complete frame at its position, otherwise -1. Does not move the position.
+    static int completeFrameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return -1;
+        }
+        int pos = buffer.position();
+        int length = ((buffer.get(pos) & 0xFF) << 8) | (buffer.get(pos + 1) & 0xFF);
+        int size = HEADER_SIZE + length;
+        return buffer.remaining() >= size ? size : -1;
+    }
+
+    // Decodes the body of the frame starting at the buffer's position.
+    static String decode(ByteBuffer buffer, int frameSize) throws UTFDataFormatException {
+        int start = buffer.position() + HEADER_SIZE;
+        int end = buffer.position() + frameSize;
+        char[] chars = new char[frameSize - HEADER_SIZE];
+        int count = 0;
+
+        int pos = start;
+        while (pos < end) {
+            int b = buffer.get(pos) & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                pos++;
+            } else if ((b & 0xE0) == 0xC0) {
+                if (pos + 1 >= end) {
+                    throw new UTFDataFormatException("Malformed input: partial character at end");
+                }
+                int b2 = buffer.get(pos + 1);
+                if ((b2 & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException("Malformed input around byte " + (pos - start));
+                }
+                chars[count++] = (char) (((b & 0x1F) << 6) | (b2 & 0x3F));
+                pos += 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                if (pos + 2 >= end) {
+                    throw new UTFDataFormatException("Malformed input: partial character at end");
+                }
+                int b2 = buffer.get(pos + 1);
+                int b3 = buffer.get(pos + 2);
+                if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException("Malformed input around byte " + (pos - start));
+                }
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                pos += 3;
+            } else {
+                throw new UTFDataFormatException("Malformed input around byte " + (pos - start));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,587 @@
+package org.example.clientsevermsgexample;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Typed binary framing used once both ends have agreed on it:
+//
+//   type (1 byte) | sender id (varint) | payload length (varint) | payload
+//
+// A client opts in by sending HELLO before anything else. HELLO starts with an
+// empty writeUTF frame (00 00), which legacy clients never send because they
+// drop empty input, so the server can tell both kinds apart from the first
+// two bytes. The server answers with its own HELLO carrying the version it
+// will speak. Connections that start with a non-empty writeUTF frame keep the
+// old "username: text" protocol.
+//
+// From version 2 on, either side may send any frame deflated as COMPRESSED
+// once it is big enough to be worth it. read() and decode() inflate them, so
+// nothing above this class ever sees one.
+final class WireProtocol {
+    static final int VERSION = 2;
+    static final int COMPRESSION_VERSION = 2;
+    // chat.compression.threshold: smallest frame worth deflating, 0 never compresses
+    static final int COMPRESS_THRESHOLD = Integer.getInteger("chat.compression.threshold", 1024);
+    static final int HELLO_SIZE = 5;
+    static final int MAX_PAYLOAD = Integer.getInteger("chat.maxFrameSize", 16 * 1024 * 1024);
+
+    static final byte TEXT = 1;
+    static final byte JOIN = 2;
+    static final byte LEAVE = 3;
+    static final byte PING = 4;
+    static final byte PONG = 5;
+    // A chat line from before the client connected:
+    // timestamp (8 bytes) | name length (varint) | name | text
+    static final byte HISTORY = 6;
+    // Asks for journaled lines as HISTORY frames:
+    // number of lines (varint), 0 for everything the server keeps
+    static final byte BACKLOG = 7;
+    // Searches the journal, answered with HISTORY frames and then QUERY_DONE:
+    // from (8 bytes) | to (8 bytes, 0 for no end) | after (8 bytes) | limit (varint) | sender
+    // Times are epoch millis, after is the cursor from the previous page (0
+    // for the first) and an empty sender matches anyone.
+    static final byte QUERY = 8;
+    // Ends the results of a QUERY: cursor for the next page (8 bytes), 0 when there are no more
+    static final byte QUERY_DONE = 9;
+    // Room membership, payload is the room name
+    static final byte SUBSCRIBE = 10;
+    static final byte UNSUBSCRIBE = 11;
+    // A chat line for one room: room length (varint) | room | text
+    // TEXT is the same as ROOM_TEXT to the lobby, which every client starts in.
+    static final byte ROOM_TEXT = 12;
+    static final String LOBBY = "lobby";
+    // Sent by another server instead of JOIN, payload is its node id (8 bytes)
+    static final byte PEER = 13;
+    // A chat line passed between servers: origin node (8) | origin sequence (8) |
+    // flags (1) | room length (varint) | room | sender length (varint) | sender | text
+    static final byte RELAY = 14;
+    // RELAY flag for a server broadcast to every client rather than one room
+    static final int RELAY_EVERYONE = 1;
+    // Another frame with its payload deflated (zlib format):
+    // original type (1) | original payload length (varint) | deflated payload
+    static final byte COMPRESSED = 15;
+    // Journal sequence number (8 bytes) of the chat line just before it, or
+    // after a replay of the last line replayed
+    static final byte SEQUENCE = 16;
+    // The last sequence number a reconnecting client saw (8 bytes). Only
+    // meaningful as the first frame after HELLO, when the server replays just
+    // the lines after it instead of its usual replay.
+    static final byte RESUME = 17;
+
+    // Sender id of messages typed into the server window
+    static final int SERVER_ID = 0;
+    static final String SERVER_NAME = "Server";
+
+    // type | sender 0 | length 8 | sequence number
+    private static final int SEQUENCE_FRAME_SIZE = 11;
+
+    private static final byte[] MAGIC = {0, 0, 'C', 'M'};
+    private static final byte[] EMPTY = new byte[0];
+
+    private WireProtocol() {
+    }
+
+    // A decoded binary frame
+    record Packet(byte type, int sender, byte[] payload) {
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    // The payload of a HISTORY frame
+    record History(long timestamp, String sender, String text) {
+    }
+
+    // The payload of a ROOM_TEXT frame
+    record RoomText(String room, String text) {
+    }
+
+    // The payload of a RELAY frame, room null for the lobby
+    record Relay(long origin, long sequence, boolean everyone, String room, String sender, String text) {
+    }
+
+    // The payload of a QUERY frame, sender null for anyone
+    record Query(long from, long to, long after, int limit, String sender) {
+    }
+
+    static void writeHello(OutputStream out, int version) throws IOException {
+        out.write(MAGIC);
+        out.write(version);
+        out.flush();
+    }
+
+    static Frame hello(int version) {
+        byte[] bytes = {MAGIC[0], MAGIC[1], MAGIC[2], MAGIC[3], (byte) version};
+        return Frame.wrap(bytes);
+    }
+
+    // Called after the two leading zero bytes have been consumed. Returns the
+    // version the peer asked for.
+    static int readHello(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != MAGIC[2] || in.readUnsignedByte() != MAGIC[3]) {
+            throw new ProtocolException("Bad handshake");
+        }
+        return in.readUnsignedByte();
+    }
+
+    // Returns the requested version if the buffer starts with a complete HELLO,
+    // -1 if more bytes are needed. Consumes the HELLO when one is found.
+    static int readHello(ByteBuffer buffer) throws ProtocolException {
+        if (buffer.remaining() < HELLO_SIZE) {
+            return -1;
+        }
+        int pos = buffer.position();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(pos + i) != MAGIC[i]) {
+                throw new ProtocolException("Bad handshake");
+            }
+        }
+        int version = buffer.get(pos + MAGIC.length) & 0xFF;
+        buffer.position(pos + HELLO_SIZE);
+        return version;
+    }
+
+    // True if the buffer starts with what could only be a HELLO
+    static boolean startsWithHello(ByteBuffer buffer) {
+        return buffer.remaining() >= 2 && buffer.get(buffer.position()) == 0 && buffer.get(buffer.position() + 1) == 0;
+    }
+
+    static Frame text(int sender, String text) {
+        return encode(TEXT, sender, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Frame roomText(int sender, String room, String text) {
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[varintSize(roomBytes.length) + roomBytes.length + textBytes.length];
+        int pos = writeVarint(payload, 0, roomBytes.length);
+        System.arraycopy(roomBytes, 0, payload, pos, roomBytes.length);
+        System.arraycopy(textBytes, 0, payload, pos + roomBytes.length, textBytes.length);
+        return encode(ROOM_TEXT, sender, payload);
+    }
+
+    // A TEXT frame, or a ROOM_TEXT frame when room isn't null, written into a
+    // pooled buffer with the text copied straight out of source. The text
+    // ends the frame.
+    static Frame chatLine(int sender, byte[] room, ByteBuffer source, int textStart, int textLength) {
+        int payloadLength = room != null ? varintSize(room.length) + room.length + textLength : textLength;
+        int size = 1 + varintSize(sender) + varintSize(payloadLength) + payloadLength;
+        ByteBuffer bytes = BufferPool.allocate(size);
+        bytes.put(0, room != null ? ROOM_TEXT : TEXT);
+        int pos = writeVarint(bytes, 1, sender);
+        pos = writeVarint(bytes, pos, payloadLength);
+        if (room != null) {
+            pos = writeVarint(bytes, pos, room.length);
+            bytes.put(pos, room);
+            pos += room.length;
+        }
+        bytes.put(pos, source, textStart, textLength);
+        return Frame.pooled(bytes, size);
+    }
+
+    // Where the payload of the complete frame at pos starts
+    static int payloadStart(ByteBuffer buffer, int pos) throws ProtocolException {
+        return varintEnd(buffer, varintEnd(buffer, pos + 1));
+    }
+
+    // Where the room name of a ROOM_TEXT payload running from start to end
+    // starts; its length is the varint at start
+    static int roomStart(ByteBuffer buffer, int start, int end) throws ProtocolException {
+        int roomStart = start < end ? varintEnd(buffer, start) : -1;
+        int roomLength = roomStart != -1 ? varintAt(buffer, start) : -1;
+        if (roomLength < 0 || roomStart > end || roomLength > end - roomStart) {
+            throw new ProtocolException("Truncated room text frame");
+        }
+        return roomStart;
+    }
+
+    static RoomText roomText(Packet packet) throws ProtocolException {
+        byte[] bytes = packet.payload();
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int roomStart = bytes.length > 0 ? varintEnd(payload, 0) : -1;
+        int roomLength = roomStart != -1 ? varintAt(payload, 0) : -1;
+        if (roomLength < 0 || roomLength > bytes.length - roomStart) {
+            throw new ProtocolException("Truncated room text frame");
+        }
+        int textStart = roomStart + roomLength;
+        return new RoomText(new String(bytes, roomStart, roomLength, StandardCharsets.UTF_8),
+                new String(bytes, textStart, bytes.length - textStart, StandardCharsets.UTF_8));
+    }
+
+    static Frame subscribe(byte type, String room) {
+        return encode(type, 0, room.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Frame peer(long nodeId) {
+        return encode(PEER, 0, ByteBuffer.allocate(8).putLong(nodeId).array());
+    }
+
+    static long peer(Packet packet) throws ProtocolException {
+        if (packet.payload().length != 8) {
+            throw new ProtocolException("Bad peer frame");
+        }
+        return ByteBuffer.wrap(packet.payload()).getLong();
+    }
+
+    static Frame relay(long origin, long sequence, boolean everyone, ChatMessage message) {
+        byte[] roomBytes = message.room != null ? message.room.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] senderBytes = message.senderBytes();
+        byte[] payload = new byte[17 + varintSize(roomBytes.length) + roomBytes.length
+                + varintSize(senderBytes.length) + senderBytes.length + message.textSize()];
+        ByteBuffer bytes = ByteBuffer.wrap(payload);
+        bytes.putLong(origin).putLong(sequence).put((byte) (everyone ? RELAY_EVERYONE : 0));
+        int pos = writeVarint(payload, 17, roomBytes.length);
+        System.arraycopy(roomBytes, 0, payload, pos, roomBytes.length);
+        pos = writeVarint(payload, pos + roomBytes.length, senderBytes.length);
+        System.arraycopy(senderBytes, 0, payload, pos, senderBytes.length);
+        message.copyText(bytes, pos + senderBytes.length);
+        return encode(RELAY, 0, payload);
+    }
+
+    static Relay relay(Packet packet) throws ProtocolException {
+        byte[] bytes = packet.payload();
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int roomStart = bytes.length > 17 ? varintEnd(payload, 17) : -1;
+        int roomLength = roomStart != -1 ? varintAt(payload, 17) : -1;
+        if (roomLength < 0 || roomLength >= bytes.length - roomStart) {
+            throw new ProtocolException("Truncated relay frame");
+        }
+        int senderLengthAt = roomStart + roomLength;
+        int senderStart = varintEnd(payload, senderLengthAt);
+        int senderLength = senderStart != -1 ? varintAt(payload, senderLengthAt) : -1;
+        if (senderLength < 0 || senderLength > bytes.length - senderStart) {
+            throw new ProtocolException("Truncated relay frame");
+        }
+        int textStart = senderStart + senderLength;
+        return new Relay(payload.getLong(0), payload.getLong(8), (bytes[16] & RELAY_EVERYONE) != 0,
+                roomLength > 0 ? new String(bytes, roomStart, roomLength, StandardCharsets.UTF_8) : null,
+                new String(bytes, senderStart, senderLength, StandardCharsets.UTF_8),
+                new String(bytes, textStart, bytes.length - textStart, StandardCharsets.UTF_8));
+    }
+
+    static Frame join(int sender, String name) {
+        return encode(JOIN, sender, name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Size of the HISTORY frame putHistory() writes for the message
+    static int historySize(ChatMessage message) {
+        int nameLength = message.senderBytes().length;
+        int payloadLength = 8 + varintSize(nameLength) + nameLength + message.textSize();
+        return 1 + varintSize(message.senderId) + varintSize(payloadLength) + payloadLength;
+    }
+
+    // The message as a HISTORY frame, written straight into target at index
+    static void putHistory(ByteBuffer target, int index, ChatMessage message, long timestamp) {
+        byte[] nameBytes = message.senderBytes();
+        int payloadLength = 8 + varintSize(nameBytes.length) + nameBytes.length + message.textSize();
+        target.put(index, HISTORY);
+        int pos = writeVarint(target, index + 1, message.senderId);
+        pos = writeVarint(target, pos, payloadLength);
+        target.putLong(pos, timestamp);
+        pos = writeVarint(target, pos + 8, nameBytes.length);
+        target.put(pos, nameBytes);
+        message.copyText(target, pos + nameBytes.length);
+    }
+
+    static History history(Packet packet) throws ProtocolException {
+        byte[] bytes = packet.payload();
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int nameStart = bytes.length > 8 ? varintEnd(payload, 8) : -1;
+        int nameLength = nameStart != -1 ? varintAt(payload, 8) : -1;
+        if (nameLength < 0 || nameLength > bytes.length - nameStart) {
+            throw new ProtocolException("Truncated history frame");
+        }
+        int textStart = nameStart + nameLength;
+        return new History(payload.getLong(0),
+                new String(bytes, nameStart, nameLength, StandardCharsets.UTF_8),
+                new String(bytes, textStart, bytes.length - textStart, StandardCharsets.UTF_8));
+    }
+
+    static Frame backlog(int messages) {
+        byte[] payload = new byte[varintSize(messages)];
+        writeVarint(payload, 0, messages);
+        return encode(BACKLOG, 0, payload);
+    }
+
+    static int backlogSize(Packet packet) throws ProtocolException {
+        ByteBuffer payload = ByteBuffer.wrap(packet.payload());
+        if (varintEnd(payload, 0) == -1) {
+            throw new ProtocolException("Truncated backlog request");
+        }
+        return Math.max(0, varintAt(payload, 0));
+    }
+
+    static Frame query(Query query) {
+        byte[] sender = query.sender() != null ? query.sender().getBytes(StandardCharsets.UTF_8) : EMPTY;
+        byte[] payload = new byte[24 + varintSize(query.limit()) + sender.length];
+        ByteBuffer.wrap(payload).putLong(query.from()).putLong(query.to()).putLong(query.after());
+        int pos = writeVarint(payload, 24, query.limit());
+        System.arraycopy(sender, 0, payload, pos, sender.length);
+        return encode(QUERY, 0, payload);
+    }
+
+    static Query query(Packet packet) throws ProtocolException {
+        byte[] bytes = packet.payload();
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int senderStart = bytes.length > 24 ? varintEnd(payload, 24) : -1;
+        if (senderStart == -1) {
+            throw new ProtocolException("Truncated query frame");
+        }
+        String sender = senderStart < bytes.length
+                ? new String(bytes, senderStart, bytes.length - senderStart, StandardCharsets.UTF_8)
+                : null;
+        return new Query(payload.getLong(0), payload.getLong(8), payload.getLong(16),
+                Math.max(0, varintAt(payload, 24)), sender);
+    }
+
+    static Frame queryDone(long nextCursor) {
+        byte[] payload = new byte[8];
+        ByteBuffer.wrap(payload).putLong(nextCursor);
+        return encode(QUERY_DONE, SERVER_ID, payload);
+    }
+
+    static long queryDone(Packet packet) throws ProtocolException {
+        if (packet.payload().length < 8) {
+            throw new ProtocolException("Truncated query result");
+        }
+        return ByteBuffer.wrap(packet.payload()).getLong();
+    }
+
+    static Frame sequence(long sequence) {
+        return encode(SEQUENCE, SERVER_ID, ByteBuffer.allocate(8).putLong(sequence).array());
+    }
+
+    static Frame resume(long sequence) {
+        return encode(RESUME, 0, ByteBuffer.allocate(8).putLong(sequence).array());
+    }
+
+    // The payload of a SEQUENCE or RESUME frame
+    static long sequence(Packet packet) throws ProtocolException {
+        if (packet.payload().length < 8) {
+            throw new ProtocolException("Truncated sequence number");
+        }
+        return ByteBuffer.wrap(packet.payload()).getLong();
+    }
+
+    // The frame followed by a SEQUENCE frame, as one frame, unless sequence
+    // is 0. Pooled frames get a pooled copy.
+    static Frame withSequence(Frame frame, long sequence) {
+        if (sequence == 0) {
+            return frame;
+        }
+        if (frame.isPooled()) {
+            int size = frame.size() + SEQUENCE_FRAME_SIZE;
+            ByteBuffer bytes = BufferPool.allocate(size);
+            frame.copyTo(bytes, 0);
+            bytes.put(frame.size(), SEQUENCE).put(frame.size() + 1, (byte) SERVER_ID).put(frame.size() + 2, (byte) 8)
+                    .putLong(frame.size() + 3, sequence);
+            return Frame.pooled(bytes, size);
+        }
+        Frame marker = sequence(sequence);
+        ByteBuffer bytes = ByteBuffer.allocate(frame.size() + marker.size());
+        frame.copyTo(bytes, 0);
+        marker.copyTo(bytes, frame.size());
+        return Frame.wrap(bytes.array());
+    }
+
+    static Frame control(byte type, int sender) {
+        return encode(type, sender, EMPTY);
+    }
+
+    static Frame encode(byte type, int sender, byte[] payload) {
+        byte[] bytes = new byte[1 + varintSize(sender) + varintSize(payload.length) + payload.length];
+        bytes[0] = type;
+        int pos = writeVarint(bytes, 1, sender);
+        pos = writeVarint(bytes, pos, payload.length);
+        System.arraycopy(payload, 0, bytes, pos, payload.length);
+        return Frame.wrap(bytes);
+    }
+
+    static Packet read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int sender = readVarint(in);
+        int length = readVarint(in);
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new ProtocolException("Frame of " + length + " bytes exceeds limit of " + MAX_PAYLOAD);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return type == COMPRESSED ? inflate(sender, payload) : new Packet(type, sender, payload);
+    }
+
+    // The frame deflated as COMPRESSED, or the frame itself when it is under
+    // the threshold or doesn't shrink. Worth calling once per broadcast, not
+    // once per recipient.
+    static Frame compress(Frame frame) {
+        if (COMPRESS_THRESHOLD <= 0 || frame.size() < COMPRESS_THRESHOLD) {
+            return frame;
+        }
+        ByteBuffer buffer = frame.buffer();
+        byte type = buffer.get();
+        int sender = readVarint(buffer);
+        int length = readVarint(buffer);
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+
+        int headerSize = 1 + varintSize(length);
+        if (length <= headerSize) {
+            return frame;
+        }
+        byte[] compressed = new byte[length];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            int deflatedSize = deflater.deflate(compressed, headerSize, length - headerSize);
+            if (!deflater.finished()) {
+                return frame;
+            }
+            compressed[0] = type;
+            writeVarint(compressed, 1, length);
+            return encode(COMPRESSED, sender, Arrays.copyOf(compressed, headerSize + deflatedSize));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Packet inflate(int sender, byte[] bytes) throws ProtocolException {
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        int dataStart = bytes.length > 1 ? varintEnd(payload, 1) : -1;
+        int length = dataStart != -1 ? varintAt(payload, 1) : -1;
+        if (length <= 0 || length > MAX_PAYLOAD || bytes[0] == COMPRESSED) {
+            throw new ProtocolException("Bad compressed frame");
+        }
+        byte[] inflated = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, dataStart, bytes.length - dataStart);
+            int inflatedSize = 0;
+            while (inflatedSize < length && !inflater.finished()) {
+                int count = inflater.inflate(inflated, inflatedSize, length - inflatedSize);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflatedSize += count;
+            }
+            if (inflatedSize != length || !inflater.finished()) {
+                throw new ProtocolException("Compressed frame does not inflate to " + length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Bad compressed frame: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return new Packet(bytes[0], sender, inflated);
+    }
+
+    // Returns the size of the complete frame at the buffer's position, or -1
+    // if more bytes are needed. Does not move the position.
+    static int completeFrameSize(ByteBuffer buffer) throws ProtocolException {
+        int senderEnd = varintEnd(buffer, buffer.position() + 1);
+        if (senderEnd == -1) {
+            return -1;
+        }
+        int lengthEnd = varintEnd(buffer, senderEnd);
+        if (lengthEnd == -1) {
+            return -1;
+        }
+        int length = varintAt(buffer, senderEnd);
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new ProtocolException("Frame of " + Integer.toUnsignedString(length) + " bytes exceeds limit of " + MAX_PAYLOAD);
+        }
+        int size = lengthEnd - buffer.position() + length;
+        return buffer.remaining() >= size ? size : -1;
+    }
+
+    // Decodes the complete frame at the buffer's position and advances past it
+    static Packet decode(ByteBuffer buffer) throws ProtocolException {
+        byte type = buffer.get();
+        int sender = readVarint(buffer);
+        int length = readVarint(buffer);
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        return type == COMPRESSED ? inflate(sender, payload) : new Packet(type, sender, payload);
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int writeVarint(ByteBuffer bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes.put(pos++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        bytes.put(pos++, (byte) value);
+        return pos;
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // Position just past the varint starting at pos, or -1 if it is incomplete
+    private static int varintEnd(ByteBuffer buffer, int pos) throws ProtocolException {
+        for (int i = 0; i < 5; i++) {
+            if (pos >= buffer.limit()) {
+                return -1;
+            }
+            if ((buffer.get(pos++) & 0x80) == 0) {
+                return pos;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    static int varintAt(ByteBuffer buffer, int pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buffer.get(pos++) & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.clientsevermsgexample;
+
+import java.util.concurrent.TimeUnit;
+
+// How outbound frames are coalesced into socket writes. A writer gathers up to
+// maxBatch queued frames, waiting at most lingerMillis for more to arrive,
+// and then flushes them with a single write.
+final class WriteOptions {
+    final int maxBatch;
+    final long lingerNanos;
+    final boolean tcpNoDelay;
+
+    WriteOptions(int maxBatch, long lingerMillis, boolean tcpNoDelay) {
+        this.maxBatch = Math.max(1, maxBatch);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    // We batch ourselves, so Nagle is off unless explicitly asked for
+    static WriteOptions fromSystemProperties() {
+        return new WriteOptions(
+                Integer.getInteger("chat.write.maxBatch", 64),
+                Long.getLong("chat.write.lingerMillis", 0),
+                Boolean.parseBoolean(System.getProperty("chat.tcpNoDelay", "true")));
+    }
+}
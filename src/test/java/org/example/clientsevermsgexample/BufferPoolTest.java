@@ -0,0 +1,95 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+    private static ByteBuffer pooledCopy(Frame frame) {
+        ByteBuffer buffer = BufferPool.allocate(frame.size());
+        frame.copyTo(buffer, 0);
+        return buffer;
+    }
+
+    @Test
+    void reusesReleasedBuffers() {
+        // The first one carves a slab and fills this thread's cache with the rest
+        BufferPool.allocate(1000);
+        ByteBuffer buffer = BufferPool.allocate(1000);
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1024, buffer.remaining());
+        buffer.putInt(42);
+
+        BufferPool.release(buffer);
+        ByteBuffer again = BufferPool.allocate(1024);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(1024, again.limit());
+    }
+
+    @Test
+    void roundsUpToSmallestSize() {
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.allocate(1).capacity());
+        assertEquals(128, BufferPool.allocate(65).capacity());
+        assertEquals(BufferPool.MAX_SIZE, BufferPool.allocate(BufferPool.MAX_SIZE).capacity());
+    }
+
+    @Test
+    void leavesForeignBuffersAlone() {
+        ByteBuffer big = BufferPool.allocate(BufferPool.MAX_SIZE + 1);
+        assertEquals(BufferPool.MAX_SIZE + 1, big.capacity());
+        BufferPool.release(big);
+
+        ByteBuffer heap = ByteBuffer.allocate(256);
+        BufferPool.release(heap);
+        assertNotSame(heap, BufferPool.allocate(256));
+    }
+
+    @Test
+    void pooledFrameReturnsBufferOnLastRelease() {
+        Frame original = WireProtocol.text(3, "hello");
+        ByteBuffer buffer = pooledCopy(original);
+        Frame frame = Frame.pooled(buffer, original.size());
+        assertEquals(original.buffer(), frame.buffer());
+
+        frame.retain();
+        frame.release();
+        assertNotSame(buffer, BufferPool.allocate(original.size()));
+        frame.release();
+        assertSame(buffer, BufferPool.allocate(original.size()));
+    }
+
+    @Test
+    void copyOfAdvancesPastFrame() {
+        Frame original = WireProtocol.text(3, "hello");
+        ByteBuffer source = ByteBuffer.allocate(original.size() + 1);
+        original.copyTo(source, 0);
+
+        Frame copy = Frame.copyOf(source, original.size());
+        assertEquals(original.size(), source.position());
+        assertEquals(original.buffer(), copy.buffer());
+        copy.release();
+    }
+
+    @Test
+    void messageReleasesFramesWithLastRelease() {
+        Frame original = WireProtocol.text(3, "hello");
+        ByteBuffer buffer = pooledCopy(original);
+        ChatMessage message = new ChatMessage(3, "bob", null, null, Frame.pooled(buffer, original.size()), 5);
+        assertEquals("hello", message.text());
+
+        // Held by a queue as well as its creator
+        message.retain();
+        message.release();
+        assertNotSame(buffer, BufferPool.allocate(original.size()));
+        assertEquals(original.buffer(), message.binaryFrame().buffer());
+        message.release();
+        assertSame(buffer, BufferPool.allocate(original.size()));
+    }
+}
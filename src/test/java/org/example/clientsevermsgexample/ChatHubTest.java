@@ -0,0 +1,91 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChatHubTest {
+    private final ChatHub hub = new ChatHub((sender, content) -> { }, null, null, new ServerMetrics());
+
+    private static WireProtocol.Packet packet(byte type, String text) {
+        return new WireProtocol.Packet(type, 0, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static WireProtocol.Packet roomText(String room, String text) throws Exception {
+        return WireProtocol.decode(WireProtocol.roomText(0, room, text).buffer());
+    }
+
+    @Test
+    void routesRoomLinesToSubscribersOnly() throws Exception {
+        RecordingSession alice = new RecordingSession(hub).join("alice");
+        RecordingSession bob = new RecordingSession(hub).join("bob");
+        RecordingSession carol = new RecordingSession(hub).join("carol");
+        bob.onPacket(packet(WireProtocol.SUBSCRIBE, "dev"));
+        alice.onPacket(packet(WireProtocol.SUBSCRIBE, "dev"));
+
+        alice.onPacket(roomText("dev", "in dev"));
+        alice.onPacket(packet(WireProtocol.TEXT, "in lobby"));
+
+        assertEquals(List.of(), alice.lines());
+        assertEquals(List.of("in dev", "in lobby"), bob.lines());
+        assertEquals(List.of("in lobby"), carol.lines());
+    }
+
+    @Test
+    void leavingRoomStopsItsLines() throws Exception {
+        RecordingSession alice = new RecordingSession(hub).join("alice");
+        RecordingSession bob = new RecordingSession(hub).join("bob");
+        bob.onPacket(packet(WireProtocol.SUBSCRIBE, "dev"));
+        alice.onPacket(roomText("dev", "first"));
+        bob.onPacket(packet(WireProtocol.UNSUBSCRIBE, "dev"));
+        alice.onPacket(roomText("dev", "second"));
+
+        // Nobody is subscribed any more, the line goes nowhere
+        assertEquals(List.of("first"), bob.lines());
+
+        // Leaving the lobby works the same way
+        bob.onPacket(packet(WireProtocol.UNSUBSCRIBE, "Lobby"));
+        alice.onPacket(packet(WireProtocol.TEXT, "lobby"));
+        assertEquals(List.of("first"), bob.lines());
+    }
+
+    @Test
+    void closingSessionLeavesItsRooms() throws Exception {
+        RecordingSession alice = new RecordingSession(hub).join("alice");
+        RecordingSession bob = new RecordingSession(hub).join("bob");
+        bob.onPacket(packet(WireProtocol.SUBSCRIBE, "dev"));
+        bob.close();
+        alice.onPacket(roomText("dev", "anyone?"));
+        assertEquals(List.of(), bob.lines());
+        assertEquals(1, hub.size());
+    }
+
+    @Test
+    void lobbyNamesMapToLobby() {
+        assertNull(hub.roomKey(" lobby "));
+        assertNull(hub.roomKey("LOBBY"));
+        assertNull(hub.roomKey(""));
+        assertEquals("dev", hub.roomKey(" dev "));
+    }
+
+    @Test
+    void shardsMembersByLoop() {
+        ShardedRegistry registry = new ShardedRegistry(2);
+        RecordingSession first = new RecordingSession(hub, 0);
+        RecordingSession second = new RecordingSession(hub, 1);
+        RecordingSession third = new RecordingSession(hub, 1);
+        registry.add(first);
+        registry.add(second);
+        registry.add(third);
+
+        assertEquals(List.of(first), List.of(registry.snapshot(0)));
+        assertEquals(2, registry.snapshot(1).length);
+        assertEquals(3, registry.size());
+        registry.remove(second);
+        assertEquals(List.of(third), List.of(registry.snapshot(1)));
+    }
+}
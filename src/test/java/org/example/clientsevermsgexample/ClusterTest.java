@@ -0,0 +1,75 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterTest {
+    private static final int PUBLISHERS = 8;
+    private static final int LINES = 300;
+
+    private static final WriteOptions WRITE_OPTIONS = new WriteOptions(64, 0, true);
+
+    @Test
+    void peerKeepsEveryLineFromConcurrentPublishers() throws Exception {
+        try (ServerSocket peer = new ServerSocket(0)) {
+            CountDownLatch linked = new CountDownLatch(1);
+            Cluster cluster = new Cluster(List.of(new InetSocketAddress("localhost", peer.getLocalPort())), WRITE_OPTIONS,
+                    (sender, content) -> {
+                        if (content.startsWith("Linked")) {
+                            linked.countDown();
+                        }
+                    });
+            cluster.start();
+            try (Socket socket = peer.accept()) {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                assertEquals(0, in.readUnsignedShort());
+                WireProtocol.readHello(in);
+                WireProtocol.writeHello(out, WireProtocol.VERSION);
+                assertEquals(WireProtocol.PEER, WireProtocol.read(in).type());
+                assertTrue(linked.await(5, TimeUnit.SECONDS));
+
+                List<Thread> publishers = new ArrayList<>();
+                for (int p = 0; p < PUBLISHERS; p++) {
+                    int publisher = p;
+                    Thread thread = new Thread(() -> {
+                        for (int line = 0; line < LINES; line++) {
+                            cluster.publish(new ChatMessage(publisher + 1, "user" + publisher, "line " + line), false);
+                        }
+                    });
+                    publishers.add(thread);
+                    thread.start();
+                }
+
+                // What the receiving node would deliver
+                Cluster receiver = new Cluster(List.of(), WRITE_OPTIONS, (sender, content) -> {
+                });
+                int delivered = 0;
+                for (int i = 0; i < PUBLISHERS * LINES; i++) {
+                    WireProtocol.Relay relay = WireProtocol.relay(WireProtocol.read(in));
+                    if (receiver.firstSeen(relay.origin(), relay.sequence())) {
+                        delivered++;
+                    }
+                }
+                for (Thread thread : publishers) {
+                    thread.join();
+                }
+                assertEquals(PUBLISHERS * LINES, delivered);
+            } finally {
+                cluster.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+    @Test
+    void keepsRunningAfterFailedTask() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        EventLoop loop = new EventLoop(0) {
+            @Override
+            void handle(SelectionKey key) {
+            }
+
+            @Override
+            void failed(Runnable task, RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        };
+        loop.start("test-loop");
+        try {
+            CountDownLatch ran = new CountDownLatch(1);
+            loop.execute(() -> {
+                throw new IllegalStateException("bug");
+            });
+            loop.execute(ran::countDown);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            assertTrue(loop.isRunning());
+            assertEquals(1, failures.get());
+        } finally {
+            loop.stop();
+        }
+    }
+}
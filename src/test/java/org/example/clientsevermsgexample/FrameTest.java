@@ -0,0 +1,79 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FrameTest {
+    private static byte[] writeUTF(String text) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(text);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bytesOf(Frame frame) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        frame.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void encodesLikeWriteUTF() throws Exception {
+        // NUL and characters outside the BMP are where modified UTF-8 differs
+        String content = "héllo \u0000 😀";
+        assertArrayEquals(writeUTF("alice: " + content), bytesOf(Frame.of("alice", content)));
+        assertArrayEquals(writeUTF(content), bytesOf(Frame.of(content)));
+    }
+
+    @Test
+    void decodesInPlace() throws Exception {
+        String content = "héllo \u0000 😀";
+        assertEquals("alice: " + content, Frame.of("alice", content).text());
+        assertEquals("bob: hi", Frame.read(new DataInputStream(new ByteArrayInputStream(writeUTF("bob: hi")))).text());
+    }
+
+    @Test
+    void givesEveryRecipientItsOwnView() throws Exception {
+        Frame frame = Frame.of("alice", "hi");
+        ByteBuffer first = frame.buffer();
+        ByteBuffer second = frame.buffer();
+        first.position(first.limit());
+        assertEquals(0, second.position());
+        assertEquals(frame.size(), second.remaining());
+        assertArrayEquals(writeUTF("alice: hi"), bytesOf(frame));
+    }
+
+    @Test
+    void unpooledFrameIgnoresRefcount() throws Exception {
+        Frame frame = Frame.of("alice", "hi");
+        frame.retain();
+        frame.release();
+        frame.release();
+        assertEquals("alice: hi", frame.text());
+    }
+
+    @Test
+    void messageEncodesEachFormatOnce() throws Exception {
+        ChatMessage message = new ChatMessage(1, "alice", "hi");
+        Frame legacy = message.legacyFrame();
+        assertSame(legacy, message.legacyFrame());
+        assertSame(message.binaryFrame(), message.binaryFrame());
+        assertArrayEquals(writeUTF("alice: hi"), bytesOf(legacy));
+    }
+
+    @Test
+    void messageTooLongForWriteUTFHasNoLegacyFrame() {
+        ChatMessage message = new ChatMessage(1, "alice", "x".repeat(70_000));
+        assertNull(message.legacyFrame());
+        assertEquals(70_000, message.textSize());
+    }
+}
@@ -0,0 +1,211 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalTest {
+    // Small enough that a few hundred lines span several segments
+    private static final int SEGMENT_BYTES = 4096;
+    private static final int LINES = 300;
+
+    @TempDir
+    Path dir;
+
+    private JournalOptions options() {
+        return new JournalOptions(dir, SEGMENT_BYTES, 0, 0, 0, 0, 0);
+    }
+
+    private static String sender(int line) {
+        return line % 3 == 0 ? "carol" : "dave";
+    }
+
+    private static String text(int line) {
+        return "line " + line + " " + "x".repeat(line % 40);
+    }
+
+    private void appendLines() throws IOException {
+        try (Journal journal = Journal.open(options())) {
+            for (int line = 0; line < LINES; line++) {
+                assertEquals(line + 1, journal.append(new ChatMessage(1, sender(line), text(line))));
+            }
+        }
+    }
+
+    private static byte[] bytes(List<Frame> frames) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Frame frame : frames) {
+            long offset = 0;
+            while (offset < frame.size()) {
+                offset += frame.transferTo(Channels.newChannel(out), offset);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<WireProtocol.History> lines(List<Frame> frames) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes(frames));
+        List<WireProtocol.History> lines = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            WireProtocol.Packet packet = WireProtocol.decode(buffer);
+            assertEquals(WireProtocol.HISTORY, packet.type());
+            lines.add(WireProtocol.history(packet));
+        }
+        return lines;
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".idx")).count();
+        }
+    }
+
+    @Test
+    void recoversAcrossSegments() throws Exception {
+        appendLines();
+        assertTrue(segments() > 2, "expected the journal to roll");
+
+        try (Journal journal = Journal.open(options())) {
+            // Numbering carries on after the last recovered line
+            assertEquals(LINES + 1, journal.append(new ChatMessage(1, "erin", "after restart")));
+
+            Journal.Backlog backlog = journal.backlog(0, 0, true);
+            assertEquals(LINES + 1, backlog.lastSequence());
+            List<WireProtocol.History> all = lines(backlog.frames());
+            assertEquals(LINES + 1, all.size());
+            for (int line = 0; line < LINES; line++) {
+                assertEquals(sender(line), all.get(line).sender());
+                assertEquals(text(line), all.get(line).text());
+            }
+            assertEquals("after restart", all.get(LINES).text());
+        }
+    }
+
+    @Test
+    void replaysNewestLines() throws Exception {
+        appendLines();
+        try (Journal journal = Journal.open(options().withReplay(25, 0))) {
+            List<WireProtocol.History> replayed = lines(journal.replay(true).frames());
+            assertEquals(25, replayed.size());
+            assertEquals(text(LINES - 25), replayed.get(0).text());
+            assertEquals(text(LINES - 1), replayed.get(24).text());
+        }
+    }
+
+    @Test
+    void sendsLegacyClientsTheirOwnFrames() throws Exception {
+        appendLines();
+        try (Journal journal = Journal.open(options())) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(expected);
+            for (int line = LINES - 40; line < LINES; line++) {
+                out.writeUTF(sender(line) + ": " + text(line));
+            }
+            List<Frame> frames = journal.backlog(40, 0, false).frames();
+            assertTrue(frames.stream().allMatch(Frame::isFileRegion));
+            assertArrayEquals(expected.toByteArray(), bytes(frames));
+        }
+    }
+
+    @Test
+    void exportsEveryLine() throws Exception {
+        appendLines();
+        try (Journal journal = Journal.open(options())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long size = journal.exportTo(Channels.newChannel(out));
+            assertEquals(out.size(), size);
+            assertArrayEquals(bytes(journal.backlog(0, 0, true).frames()), out.toByteArray());
+        }
+    }
+
+    @Test
+    void pagesQueryBySender() throws Exception {
+        appendLines();
+        try (Journal journal = Journal.open(options())) {
+            List<String> found = new ArrayList<>();
+            long cursor = 0;
+            do {
+                Journal.QueryResult page = journal.query(0, 0, "carol", cursor, 7);
+                for (WireProtocol.History line : lines(page.frames())) {
+                    assertEquals("carol", line.sender());
+                    found.add(line.text());
+                }
+                cursor = page.nextCursor();
+            } while (cursor != 0);
+
+            List<String> expected = new ArrayList<>();
+            for (int line = 0; line < LINES; line += 3) {
+                expected.add(text(line));
+            }
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    void queriesTimeRange() throws Exception {
+        try (Journal journal = Journal.open(options())) {
+            journal.append(new ChatMessage(1, "carol", "before"));
+            Thread.sleep(20);
+            long from = System.currentTimeMillis();
+            for (int line = 0; line < 100; line++) {
+                journal.append(new ChatMessage(1, sender(line), text(line)));
+            }
+            Thread.sleep(20);
+            long to = System.currentTimeMillis();
+            journal.append(new ChatMessage(1, "carol", "after"));
+
+            Journal.QueryResult all = journal.query(from, to, null, 0, 1000);
+            assertEquals(0, all.nextCursor());
+            List<WireProtocol.History> lines = lines(all.frames());
+            assertEquals(100, lines.size());
+            assertEquals(text(0), lines.get(0).text());
+            assertEquals(text(99), lines.get(99).text());
+            assertTrue(lines.stream().allMatch(line -> line.timestamp() >= from && line.timestamp() < to));
+
+            assertEquals(List.of("after"), lines(journal.query(to, 0, "carol", 0, 10).frames()).stream()
+                    .map(WireProtocol.History::text).toList());
+        }
+    }
+
+    @Test
+    void refusesDirectoryInUse() throws Exception {
+        try (Journal journal = Journal.open(options())) {
+            journal.append(new ChatMessage(1, "carol", "first"));
+            assertThrows(IOException.class, () -> Journal.open(options()));
+        }
+        try (Journal journal = Journal.open(options())) {
+            assertEquals(2, journal.append(new ChatMessage(1, "carol", "second")));
+        }
+    }
+
+    @Test
+    void catchesUpAfterSequence() throws Exception {
+        appendLines();
+        try (Journal journal = Journal.open(options())) {
+            Journal.Backlog since = journal.since(LINES - 50, 1000);
+            assertEquals(LINES, since.lastSequence());
+            List<WireProtocol.History> lines = lines(since.frames());
+            assertEquals(50, lines.size());
+            assertEquals(text(LINES - 50), lines.get(0).text());
+
+            // At most limit lines, the newest ones
+            assertEquals(10, lines(journal.since(0, 10).frames()).size());
+            assertEquals(0, journal.since(LINES, 10).frames().size());
+        }
+    }
+}
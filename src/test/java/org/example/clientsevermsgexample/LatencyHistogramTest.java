@@ -0,0 +1,80 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+    // Within one part in 128 of the expected value
+    private static void assertClose(long expected, long actual) {
+        assertEquals(expected, actual, expected / 128.0);
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0, histogram.max());
+    }
+
+    @Test
+    void keepsSmallValuesExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 200; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.percentile(0.50));
+        assertEquals(198, histogram.percentile(0.99));
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(200, histogram.max());
+    }
+
+    @Test
+    void percentilesOfUniformMicroseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(100_000, histogram.count());
+        assertClose(50_000_000, histogram.percentile(0.50));
+        assertClose(99_000_000, histogram.percentile(0.99));
+        assertClose(99_900_000, histogram.percentile(0.999));
+        assertClose(100_000_000, histogram.max());
+        assertClose(100_000_000, histogram.percentile(1));
+    }
+
+    @Test
+    void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.max());
+        histogram.record(Long.MAX_VALUE);
+        assertClose((1L << 40) - 1, histogram.max());
+        assertEquals(2, histogram.count());
+    }
+
+    @Test
+    void mergesAndResets() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(1_000);
+        second.record(5_000_000);
+        second.record(5_000_000);
+        first.addAll(second);
+        assertEquals(3, first.count());
+        assertClose(5_000_000, first.percentile(0.50));
+        assertEquals(2, second.count());
+
+        first.reset();
+        assertEquals(0, first.count());
+    }
+
+    @Test
+    void formatsByMagnitude() {
+        assertEquals("999ns", LatencyHistogram.format(999));
+        assertEquals("1.5us", LatencyHistogram.format(1_500));
+        assertEquals("2.50ms", LatencyHistogram.format(2_500_000));
+        assertEquals("3.00s", LatencyHistogram.format(3_000_000_000L));
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MaxClientsTest {
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    void blockingEngineRejectsClientsOverLimit() throws Exception {
+        rejectsClientsOverLimit(ServerEngine.BLOCKING);
+    }
+
+    @Test
+    void nioEngineRejectsClientsOverLimit() throws Exception {
+        rejectsClientsOverLimit(ServerEngine.NIO);
+    }
+
+    private static void rejectsClientsOverLimit(ServerEngine engine) throws Exception {
+        int port = freePort();
+        ServerOptions options = new ServerOptions().setPort(port).setEngine(engine).setJournalDir(null).setMaxClients(2);
+        ChatServer server = new ChatServer(options);
+        server.start();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            // All at once, before the server has registered any of them
+            for (int i = 0; i < 6; i++) {
+                sockets.add(new Socket("localhost", port));
+            }
+            int rejected = 0;
+            for (Socket socket : sockets) {
+                socket.setSoTimeout(2000);
+                try {
+                    if (socket.getInputStream().read() == -1) {
+                        rejected++;
+                    }
+                } catch (IOException e) {
+                    // Still connected and silent, waiting for a HELLO
+                }
+            }
+            assertEquals(4, rejected);
+            assertEquals(2, server.getClientCount());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+    @Test
+    void dropOldestKeepsNewest() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(2, OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(1, queue.droppedCount());
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+    }
+
+    @Test
+    void disconnectRefusesWhenFull() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(1, OverflowPolicy.DISCONNECT);
+        assertTrue(queue.offer(1));
+        assertFalse(queue.offer(2));
+    }
+
+    @Test
+    void interruptedBackpressureReportsNothingQueued() {
+        OutboundQueue<Integer> queue = new OutboundQueue<>(1, OverflowPolicy.BACKPRESSURE);
+        assertTrue(queue.offer(1));
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(queue.offer(2));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1, queue.depth());
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortScannerTest {
+    private static List<PortScanner.Result> scan(List<String> hosts, List<Integer> ports) throws InterruptedException {
+        List<PortScanner.Result> results = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        PortScanner.scan(hosts, ports, 2000, result -> {
+            synchronized (results) {
+                results.add(result);
+            }
+        }, done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        synchronized (results) {
+            return List.copyOf(results);
+        }
+    }
+
+    @Test
+    void tellsOpenFromClosed() throws Exception {
+        int closedPort;
+        try (ServerSocket closed = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            closedPort = closed.getLocalPort();
+        }
+        try (ServerSocket open = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            List<PortScanner.Result> results = scan(List.of("127.0.0.1"), List.of(open.getLocalPort(), closedPort));
+
+            Map<Integer, PortScanner.Status> byPort = new HashMap<>();
+            for (PortScanner.Result result : results) {
+                assertEquals("127.0.0.1", result.host());
+                byPort.put(result.port(), result.status());
+            }
+            assertEquals(Map.of(open.getLocalPort(), PortScanner.Status.OPEN, closedPort, PortScanner.Status.CLOSED), byPort);
+            for (PortScanner.Result result : results) {
+                assertTrue(result.latencyNanos() > 0);
+            }
+        }
+    }
+
+    @Test
+    void reportsUnknownHostOnce() throws Exception {
+        List<PortScanner.Result> results = scan(List.of("no-such-host.invalid"), List.of(80, 443));
+        assertEquals(1, results.size());
+        assertEquals(PortScanner.Status.UNKNOWN_HOST, results.get(0).status());
+        assertEquals(0, results.get(0).port());
+    }
+
+    @Test
+    void answersEveryProbeBeyondInFlightLimit() throws Exception {
+        List<Integer> ports = new ArrayList<>();
+        for (int port = 40000; port < 40600; port++) {
+            ports.add(port);
+        }
+        List<PortScanner.Result> results = scan(List.of("127.0.0.1"), ports);
+        assertEquals(ports.size(), results.size());
+        assertEquals(ports.size(), results.stream().map(PortScanner.Result::port).distinct().count());
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReaperTest {
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Socket binaryClient(int port, String name, int receiveBuffer) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(receiveBuffer);
+        socket.connect(new InetSocketAddress("localhost", port));
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        WireProtocol.hello(WireProtocol.VERSION).writeTo(out);
+        WireProtocol.join(0, name).writeTo(out);
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        in.readUnsignedShort();
+        WireProtocol.readHello(in);
+        return socket;
+    }
+
+    // Reads until the server hangs up
+    private static CountDownLatch closedBy(Socket socket) {
+        CountDownLatch closed = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (true) {
+                    WireProtocol.read(in);
+                }
+            } catch (IOException e) {
+                closed.countDown();
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        return closed;
+    }
+
+    // A client that stopped reading fills its queue under BACKPRESSURE; the
+    // reaper must neither wait on it nor stop reaping the others
+    @Test
+    void reapsPastClientWithFullQueue() throws Exception {
+        int port = freePort();
+        ServerOptions options = new ServerOptions().setPort(port).setEngine(ServerEngine.BLOCKING).setJournalDir(null)
+                .setMetricsJmx(false).setOverflowPolicy(OverflowPolicy.BACKPRESSURE).setQueueCapacity(4)
+                .setHeartbeat(500, 1500);
+        ChatServer server = new ChatServer(options);
+        server.start();
+        try (Socket stalled = binaryClient(port, "stalled", 4096);
+             Socket silent = binaryClient(port, "silent", 64 * 1024)) {
+            CountDownLatch silentClosed = closedBy(silent);
+
+            // Stuck for good once the stalled client's queue is full
+            Thread broadcaster = new Thread(() -> {
+                // Random, so compression can't shrink it
+                Random random = new Random(1);
+                for (int i = 0; i < 1000; i++) {
+                    StringBuilder line = new StringBuilder();
+                    for (int c = 0; c < 32 * 1024; c++) {
+                        line.append((char) ('a' + random.nextInt(26)));
+                    }
+                    server.broadcast(line.toString());
+                }
+            });
+            broadcaster.setDaemon(true);
+            broadcaster.start();
+
+            assertTrue(silentClosed.await(5, TimeUnit.SECONDS), "silent client was never reaped");
+            assertTrue(closedBy(stalled).await(10, TimeUnit.SECONDS), "stalled client was never dropped");
+        } finally {
+            server.stop();
+        }
+    }
+}
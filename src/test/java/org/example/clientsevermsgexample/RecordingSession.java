@@ -0,0 +1,95 @@
+package org.example.clientsevermsgexample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// A binary session that decodes and keeps whatever the hub sends it
+final class RecordingSession extends ChatSession {
+    final List<WireProtocol.Packet> received = new ArrayList<>();
+
+    RecordingSession(ChatHub hub) {
+        this(hub, 0);
+        hub.add(this);
+    }
+
+    // Not added to the hub, for registries with more shards than it has loops
+    RecordingSession(ChatHub hub, int shard) {
+        super(hub.nextId(), "127.0.0.1", shard, hub, 16);
+    }
+
+    // Version 1, so nothing arrives compressed
+    RecordingSession join(String name) throws ProtocolException {
+        onHello(1);
+        onPacket(new WireProtocol.Packet(WireProtocol.JOIN, 0, name.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    RecordingSession resume(String name, long after) throws ProtocolException {
+        onHello(1);
+        onPacket(WireProtocol.decode(WireProtocol.resume(after).buffer()));
+        onPacket(new WireProtocol.Packet(WireProtocol.JOIN, 0, name.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    // The text of every chat line received, live or from history
+    List<String> lines() {
+        List<String> lines = new ArrayList<>();
+        try {
+            for (WireProtocol.Packet packet : received) {
+                switch (packet.type()) {
+                    case WireProtocol.TEXT -> lines.add(packet.text());
+                    case WireProtocol.ROOM_TEXT -> lines.add(WireProtocol.roomText(packet).text());
+                    case WireProtocol.HISTORY -> lines.add(WireProtocol.history(packet).text());
+                    default -> {
+                    }
+                }
+            }
+        } catch (ProtocolException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    @Override
+    void sendFrame(Frame frame, ChatSession from) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long offset = 0;
+            while (offset < frame.size()) {
+                offset += frame.transferTo(Channels.newChannel(bytes), offset);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            // Skip the HELLO answer
+            if (WireProtocol.startsWithHello(buffer)) {
+                WireProtocol.readHello(buffer);
+            }
+            while (buffer.hasRemaining()) {
+                received.add(WireProtocol.decode(buffer));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    int getQueueDepth() {
+        return 0;
+    }
+
+    @Override
+    boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    void close() {
+        hub.remove(this);
+    }
+}
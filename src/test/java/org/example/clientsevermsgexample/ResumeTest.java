@@ -0,0 +1,66 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResumeTest {
+    @TempDir
+    Path dir;
+
+    private Journal journal;
+    private ChatHub hub;
+    private RecordingSession alice;
+
+    @BeforeEach
+    void open() throws Exception {
+        journal = Journal.open(new JournalOptions(dir, 4096, 0, 0, 0, 3, 0));
+        hub = new ChatHub((sender, content) -> { }, journal, null, new ServerMetrics());
+        alice = new RecordingSession(hub).join("alice");
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        journal.close();
+    }
+
+    private void say(String... lines) throws Exception {
+        for (String line : lines) {
+            alice.onPacket(new WireProtocol.Packet(WireProtocol.TEXT, 0, line.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void resumesAfterLastSeenLine() throws Exception {
+        say("one", "two", "three", "four", "five");
+        RecordingSession bob = new RecordingSession(hub).resume("bob", 2);
+        assertEquals(List.of("three", "four", "five"), bob.lines());
+
+        say("six");
+        assertEquals(List.of("three", "four", "five", "six"), bob.lines());
+    }
+
+    @Test
+    void joinReplaysNewestLines() throws Exception {
+        say("one", "two", "three", "four", "five");
+        RecordingSession bob = new RecordingSession(hub).join("bob");
+        assertEquals(List.of("three", "four", "five"), bob.lines());
+    }
+
+    @Test
+    void skipsQueuedLinesTheReplayAlreadySent() throws Exception {
+        say("one", "two");
+        // Registered, so live lines queue up for it, but not started yet
+        RecordingSession bob = new RecordingSession(hub);
+        say("three", "four");
+        bob.resume("bob", 1);
+        assertEquals(List.of("two", "three", "four"), bob.lines());
+    }
+}
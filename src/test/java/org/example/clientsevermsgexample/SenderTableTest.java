@@ -0,0 +1,49 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SenderTableTest {
+    @Test
+    void knowsTheServer() {
+        assertEquals(WireProtocol.SERVER_NAME, new SenderTable().get(WireProtocol.SERVER_ID));
+    }
+
+    @Test
+    void internsNamesAcrossIds() {
+        SenderTable table = new SenderTable();
+        String first = table.put(1, new String("alice"));
+        String second = table.put(2, new String("alice"));
+        assertSame(first, second);
+        assertSame(first, table.get(2));
+    }
+
+    @Test
+    void forgetsNamesNoIdUses() {
+        SenderTable table = new SenderTable();
+        String first = table.put(1, new String("alice"));
+        table.put(2, "bob");
+        assertEquals("alice", table.remove(1));
+        assertNull(table.get(1));
+        assertNull(table.remove(1));
+        // No longer canonical, so a new instance is kept
+        assertNotSame(first, table.put(3, new String("alice")));
+    }
+
+    @Test
+    void renamesAndGrows() {
+        SenderTable table = new SenderTable();
+        table.put(1, "alice");
+        assertEquals("carol", table.put(1, "carol"));
+        assertEquals("carol", table.get(1));
+        table.put(1000, "dave");
+        assertEquals("dave", table.get(1000));
+        assertNull(table.get(999));
+        assertNull(table.get(-1));
+        assertEquals("?", table.getOrDefault(5000, "?"));
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ServerOptionsTest {
+    @Test
+    void journalsPerPortByDefault() {
+        // Only meaningful when the build doesn't set chat.journal.dir
+        if (System.getProperty("chat.journal.dir") == null) {
+            assertEquals(Path.of("chat-journal-7001"), new ServerOptions().setPort(7001).getJournalOptions().dir);
+            assertEquals(Path.of("chat-journal-7002"), new ServerOptions().setPort(7002).getJournalOptions().dir);
+        }
+    }
+
+    @Test
+    void explicitJournalDirWins() {
+        assertEquals(Path.of("shared"), new ServerOptions().setJournalDir(Path.of("shared")).setPort(7001).getJournalOptions().dir);
+        assertNull(new ServerOptions().setJournalDir(null).setPort(7001).getJournalOptions().dir);
+    }
+}
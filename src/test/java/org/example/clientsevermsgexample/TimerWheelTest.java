@@ -0,0 +1,84 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void expiresInDeadlineOrder() {
+        List<String> expired = new ArrayList<>();
+        TimerWheel<String> wheel = new TimerWheel<>(TICK, 8, (item, now) -> {
+            expired.add(item);
+            return 0;
+        });
+        long now = System.nanoTime();
+        wheel.add("late", now + 5 * TICK);
+        wheel.add("early", now + TICK);
+
+        wheel.advance(now);
+        assertEquals(List.of(), expired);
+        wheel.advance(now + 2 * TICK);
+        assertEquals(List.of("early"), expired);
+        wheel.advance(now + 6 * TICK);
+        assertEquals(List.of("early", "late"), expired);
+    }
+
+    @Test
+    void keepsDeadlinesLapsAway() {
+        List<String> expired = new ArrayList<>();
+        TimerWheel<String> wheel = new TimerWheel<>(TICK, 4, (item, now) -> {
+            expired.add(item);
+            return 0;
+        });
+        long now = System.nanoTime();
+        // More than three laps round a wheel of four buckets
+        wheel.add("far", now + 13 * TICK);
+
+        wheel.advance(now + 2 * TICK);
+        wheel.advance(now + 6 * TICK);
+        wheel.advance(now + 10 * TICK);
+        assertEquals(List.of(), expired);
+        wheel.advance(now + 14 * TICK);
+        assertEquals(List.of("far"), expired);
+    }
+
+    @Test
+    void reschedulesUntilCancelled() {
+        List<Long> fired = new ArrayList<>();
+        boolean[] cancelled = {false};
+        TimerWheel<String> wheel = new TimerWheel<>(TICK, 8, (item, now) -> {
+            if (cancelled[0]) {
+                return 0;
+            }
+            fired.add(now);
+            return now + 2 * TICK;
+        });
+        long now = System.nanoTime();
+        wheel.add("ping", now + TICK);
+
+        for (int tick = 1; tick <= 20; tick++) {
+            wheel.advance(now + tick * TICK + 1);
+        }
+        int count = fired.size();
+        assertTrue(count >= 5, "fired " + count + " times");
+
+        // Returning 0 drops it for good
+        cancelled[0] = true;
+        for (int tick = 21; tick <= 24; tick++) {
+            wheel.advance(now + tick * TICK + 1);
+        }
+        cancelled[0] = false;
+        for (int tick = 25; tick <= 40; tick++) {
+            wheel.advance(now + tick * TICK + 1);
+        }
+        assertEquals(count, fired.size());
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.clientsevermsgexample;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WireProtocolTest {
+    private static ByteBuffer bytes(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length);
+        for (int value : values) {
+            buffer.put((byte) value);
+        }
+        return buffer.flip();
+    }
+
+    private static DataInputStream stream(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), array);
+        return new DataInputStream(new ByteArrayInputStream(array));
+    }
+
+    @Test
+    void roundTripsTextFrame() throws Exception {
+        Frame frame = WireProtocol.roomText(7, "room", "héllo");
+        ByteBuffer buffer = frame.buffer();
+        assertEquals(frame.size(), WireProtocol.completeFrameSize(buffer));
+
+        WireProtocol.Packet packet = WireProtocol.decode(buffer);
+        assertEquals(WireProtocol.ROOM_TEXT, packet.type());
+        assertEquals(7, packet.sender());
+        assertEquals(new WireProtocol.RoomText("room", "héllo"), WireProtocol.roomText(packet));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void waitsForTruncatedFrame() throws Exception {
+        ByteBuffer whole = WireProtocol.text(1, "hello").buffer();
+        for (int size = 0; size < whole.remaining(); size++) {
+            assertEquals(-1, WireProtocol.completeFrameSize(whole.duplicate().limit(size)));
+        }
+        assertThrows(EOFException.class, () -> WireProtocol.read(stream(whole.duplicate().limit(whole.limit() - 1))));
+    }
+
+    @Test
+    void rejectsVarintOverFiveBytes() {
+        ByteBuffer buffer = bytes(WireProtocol.TEXT, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01, 0x00);
+        assertThrows(ProtocolException.class, () -> WireProtocol.completeFrameSize(buffer));
+        assertThrows(ProtocolException.class, () -> WireProtocol.read(stream(buffer)));
+    }
+
+    @Test
+    void rejectsNegativePayloadLength() {
+        ByteBuffer buffer = bytes(WireProtocol.TEXT, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F);
+        assertThrows(ProtocolException.class, () -> WireProtocol.completeFrameSize(buffer));
+        assertThrows(ProtocolException.class, () -> WireProtocol.read(stream(buffer)));
+    }
+
+    @Test
+    void rejectsOversizedPayloadLength() {
+        int length = WireProtocol.MAX_PAYLOAD + 1;
+        ByteBuffer buffer = bytes(WireProtocol.TEXT, 0x00,
+                (length & 0x7F) | 0x80, ((length >>> 7) & 0x7F) | 0x80, ((length >>> 14) & 0x7F) | 0x80, length >>> 21);
+        assertThrows(ProtocolException.class, () -> WireProtocol.completeFrameSize(buffer));
+        assertThrows(ProtocolException.class, () -> WireProtocol.read(stream(buffer)));
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() {
+        // Room length 5 with only two bytes of room
+        WireProtocol.Packet roomText = new WireProtocol.Packet(WireProtocol.ROOM_TEXT, 1, new byte[]{5, 'a', 'b'});
+        assertThrows(ProtocolException.class, () -> WireProtocol.roomText(roomText));
+        // Timestamp cut short
+        WireProtocol.Packet history = new WireProtocol.Packet(WireProtocol.HISTORY, 0, new byte[]{0, 0, 0});
+        assertThrows(ProtocolException.class, () -> WireProtocol.history(history));
+        // Negative name length
+        WireProtocol.Packet negative = new WireProtocol.Packet(WireProtocol.HISTORY, 0,
+                new byte[]{0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        assertThrows(ProtocolException.class, () -> WireProtocol.history(negative));
+    }
+
+    @Test
+    void rejectsTruncatedRoomInPlace() throws Exception {
+        ByteBuffer payload = bytes(5, 'a', 'b');
+        assertThrows(ProtocolException.class, () -> WireProtocol.roomStart(payload, 0, payload.limit()));
+        assertThrows(ProtocolException.class, () -> WireProtocol.roomStart(payload, 0, 0));
+        assertEquals(1, WireProtocol.roomStart(bytes(2, 'a', 'b', 'c'), 0, 4));
+    }
+
+    @Test
+    void rejectsNegativeRoomLength() {
+        ByteBuffer payload = bytes(0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 'h', 'i');
+        assertThrows(ProtocolException.class, () -> WireProtocol.roomStart(payload, 0, payload.limit()));
+        assertThrows(ProtocolException.class, () -> WireProtocol.roomText(
+                new WireProtocol.Packet(WireProtocol.ROOM_TEXT, 1, new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 'h', 'i'})));
+    }
+
+    @Test
+    void tellsHelloFromLegacyFrame() throws Exception {
+        ByteBuffer hello = WireProtocol.hello(WireProtocol.VERSION).buffer();
+        assertTrue(WireProtocol.startsWithHello(hello));
+        assertEquals(-1, WireProtocol.readHello(hello.duplicate().limit(WireProtocol.HELLO_SIZE - 1)));
+        assertEquals(WireProtocol.VERSION, WireProtocol.readHello(hello));
+        assertEquals(WireProtocol.HELLO_SIZE, hello.position());
+
+        assertFalse(WireProtocol.startsWithHello(Frame.of("alice", "hi").buffer()));
+        assertThrows(ProtocolException.class, () -> WireProtocol.readHello(bytes(0, 0, 'X', 'Y', 2)));
+    }
+
+    @Test
+    void inflatesCompressedFrames() throws Exception {
+        String line = "all work and no play ".repeat(200);
+        Frame compressed = WireProtocol.compress(WireProtocol.roomText(3, "dev", line));
+        assertTrue(compressed.size() < line.length() / 4);
+
+        WireProtocol.Packet decoded = WireProtocol.decode(compressed.buffer());
+        assertEquals(WireProtocol.ROOM_TEXT, decoded.type());
+        assertEquals(3, decoded.sender());
+        assertEquals(new WireProtocol.RoomText("dev", line), WireProtocol.roomText(decoded));
+
+        WireProtocol.Packet read = WireProtocol.read(stream(compressed.buffer()));
+        assertEquals(new WireProtocol.RoomText("dev", line), WireProtocol.roomText(read));
+    }
+
+    @Test
+    void leavesSmallAndRandomFramesAlone() {
+        Frame small = WireProtocol.text(1, "hi");
+        assertSame(small, WireProtocol.compress(small));
+
+        byte[] noise = new byte[8192];
+        new Random(1).nextBytes(noise);
+        Frame random = WireProtocol.encode(WireProtocol.TEXT, 1, noise);
+        assertSame(random, WireProtocol.compress(random));
+    }
+
+    @Test
+    void rejectsBadCompressedFrames() {
+        byte[] text = "y".repeat(100).getBytes(StandardCharsets.UTF_8);
+        // Inner type COMPRESSED again
+        ByteBuffer twice = WireProtocol.encode(WireProtocol.COMPRESSED, 1, deflated(WireProtocol.COMPRESSED, 100, text)).buffer();
+        assertThrows(ProtocolException.class, () -> WireProtocol.decode(twice));
+        // Claims more bytes than it inflates to
+        ByteBuffer longer = WireProtocol.encode(WireProtocol.COMPRESSED, 1, deflated(WireProtocol.TEXT, 101, text)).buffer();
+        assertThrows(ProtocolException.class, () -> WireProtocol.decode(longer));
+        // Not deflate data at all
+        ByteBuffer garbage = WireProtocol.encode(WireProtocol.COMPRESSED, 1, new byte[]{WireProtocol.TEXT, 4, 1, 2, 3, 4}).buffer();
+        assertThrows(ProtocolException.class, () -> WireProtocol.decode(garbage));
+
+        ByteBuffer good = WireProtocol.encode(WireProtocol.COMPRESSED, 1, deflated(WireProtocol.TEXT, 100, text)).buffer();
+        assertDoesNotThrow(() -> WireProtocol.decode(good));
+    }
+
+    // A COMPRESSED payload: inner type, a one-byte length, then the deflated bytes
+    private static byte[] deflated(byte type, int length, byte[] payload) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] out = new byte[2 + payload.length + 64];
+        out[0] = type;
+        out[1] = (byte) length;
+        int size = deflater.deflate(out, 2, out.length - 2);
+        deflater.end();
+        return Arrays.copyOf(out, 2 + size);
+    }
+}